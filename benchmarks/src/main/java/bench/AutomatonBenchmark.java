@@ -0,0 +1,44 @@
+package bench;
+
+import dfa.DFA;
+import lexer.Lexer;
+import lexer.NFABuilder;
+import lexer.RegexCompiler;
+import nfa.NFA;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+// Main's regex pipeline on Lexer.SIMPLIFIED_REGEX, one stage per benchmark: regex to
+// postfix, Thompson construction, and subset construction.
+@State(Scope.Benchmark)
+public class AutomatonBenchmark extends BenchmarkDefaults {
+    final Set<RegexCompiler.Option> none = EnumSet.noneOf(RegexCompiler.Option.class);
+    String postfix;
+    NFA nfa;
+
+    @Setup
+    public void setUp() {
+        postfix = RegexCompiler.toPostfix(RegexCompiler.insertConcatenation(Lexer.SIMPLIFIED_REGEX));
+        nfa = RegexCompiler.buildNFA(postfix, none);
+    }
+
+    @Benchmark
+    public String regexToPostfix() {
+        return RegexCompiler.toPostfix(RegexCompiler.insertConcatenation(Lexer.SIMPLIFIED_REGEX));
+    }
+
+    @Benchmark
+    public NFA buildNFA() {
+        return RegexCompiler.buildNFA(postfix, none);
+    }
+
+    @Benchmark
+    public DFA convertToDFA() {
+        return NFABuilder.convertToDFA(nfa);
+    }
+}
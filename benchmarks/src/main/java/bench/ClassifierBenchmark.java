@@ -0,0 +1,42 @@
+package bench;
+
+import dfa.CompiledDFA;
+import lexer.Lexer;
+import lexer.TokenBuffer;
+import lexer.TokenDFABuilder;
+import lexer.TokenType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// TokenDFABuilder.classifyToken, one token per operation, cycling through the tokens of
+// a generated 64 KB program.
+@State(Scope.Thread)
+public class ClassifierBenchmark extends BenchmarkDefaults {
+    CompiledDFA classifier;
+    CharSequence[] lexemes;
+    int next;
+
+    @Setup
+    public void setUp() {
+        classifier = TokenDFABuilder.buildClassifier(TokenDFABuilder.buildTokenNFAs());
+        TokenBuffer tokens = Lexer.tokenizeToBuffer(ParallelLexerBenchmark.generate(1 << 16, 42));
+        int comment = TokenType.COMMENT.ordinal();
+        List<CharSequence> list = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) != comment) list.add(tokens.lexeme(i));
+        }
+        lexemes = list.toArray(new CharSequence[0]);
+    }
+
+    @Benchmark
+    public String classifyToken() {
+        CharSequence lexeme = lexemes[next];
+        next = next + 1 == lexemes.length ? 0 : next + 1;
+        return TokenDFABuilder.classifyToken(lexeme, classifier);
+    }
+}
@@ -0,0 +1,117 @@
+package bench;
+
+import errorHandler.ErrorHandler;
+import lexer.DFAScanner;
+import lexer.FinalSTable;
+import lexer.Lexer;
+import lexer.TokenBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// The lexer and the passes over its tokens, on generated programs of 1 KB, 64 KB and 1 MB.
+// The scan* benchmarks run the lexer's DFA with and without the FastPaths shortcuts and
+// as a generated class, over chars and over UTF-8 bytes.
+@State(Scope.Benchmark)
+public class LexerBenchmark extends BenchmarkDefaults {
+    @Param({"1024", "65536", "1048576"})
+    int size;
+
+    String input;
+    ByteBuffer bytes;
+    TokenBuffer tokens;
+    DFAScanner fast;
+    DFAScanner scalar;
+    DFAScanner generated;
+
+    @Setup
+    public void setUp() {
+        input = ParallelLexerBenchmark.generate(size, 42);
+        bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        tokens = Lexer.tokenizeToBuffer(input);
+        fast = new DFAScanner(DFAScanner.forLexer().dfa());
+        scalar = new DFAScanner(fast.dfa(), false);
+        generated = DFAScanner.generated(fast.dfa());
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return Lexer.tokenize(input);
+    }
+
+    @Benchmark
+    public TokenBuffer tokenizeToBuffer() {
+        return Lexer.tokenizeToBuffer(input);
+    }
+
+    @Benchmark
+    public int scanFast() {
+        return count(fast, input);
+    }
+
+    @Benchmark
+    public int scanScalar() {
+        return count(scalar, input);
+    }
+
+    @Benchmark
+    public int scanGenerated() {
+        return count(generated, input);
+    }
+
+    @Benchmark
+    public int scanBytesFast() {
+        return count(fast, bytes);
+    }
+
+    @Benchmark
+    public int scanBytesScalar() {
+        return count(scalar, bytes);
+    }
+
+    @Benchmark
+    public int scanBytesGenerated() {
+        return count(generated, bytes);
+    }
+
+    @Benchmark
+    public ErrorHandler checkErrors() {
+        ErrorHandler handler = new ErrorHandler();
+        handler.checkErrors(input);
+        return handler;
+    }
+
+    @Benchmark
+    public FinalSTable processTokens() {
+        FinalSTable table = new FinalSTable();
+        table.processTokens(tokens);
+        return table;
+    }
+
+    private static final class TokenCount implements DFAScanner.TokenSink {
+        int tokens;
+
+        @Override
+        public void token(int type, int start, int end) {
+            tokens++;
+        }
+    }
+
+    private static int count(DFAScanner scanner, CharSequence input) {
+        TokenCount count = new TokenCount();
+        scanner.scan(input, count);
+        return count.tokens;
+    }
+
+    private static int count(DFAScanner scanner, ByteBuffer input) {
+        TokenCount count = new TokenCount();
+        scanner.scan(input, 0, input.limit(), count);
+        return count.tokens;
+    }
+}
@@ -0,0 +1,68 @@
+package bench;
+
+import lexer.DFAScanner;
+import lexer.ParallelLexer;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Scaling benchmark for ParallelLexer: lexes one generated input with 1..N worker threads
+// and reports throughput for each. Usage: ParallelLexerBenchmark [megabytes] [maxThreads]
+public class ParallelLexerBenchmark {
+    public static void main(String[] args) {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String input = generate(megabytes << 20, 42);
+        DFAScanner scanner = DFAScanner.forLexer();
+        System.out.printf("Input: %d MB, %d cores available%n", megabytes, Runtime.getRuntime().availableProcessors());
+
+        double baseline = 0;
+        // Powers of two, then maxThreads itself if it is not one.
+        for (int threads = 1; threads <= maxThreads;
+             threads = threads == maxThreads ? maxThreads + 1 : Math.min(threads * 2, maxThreads)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            ParallelLexer lexer = new ParallelLexer(scanner, pool, Math.max(1 << 16, input.length() / (threads * 8)));
+            long best = Long.MAX_VALUE;
+            long tokens = 0;
+            for (int run = 0; run < 5; run++) {
+                long[] count = new long[1];
+                long t0 = System.nanoTime();
+                lexer.scan(input, (type, start, end) -> count[0]++);
+                best = Math.min(best, System.nanoTime() - t0);
+                tokens = count[0];
+            }
+            pool.shutdown();
+            double mbPerSec = (input.length() / 1048576.0) / (best / 1e9);
+            if (threads == 1) baseline = mbPerSec;
+            System.out.printf("threads=%-3d %8.1f MB/s  speedup %.2fx  (%d tokens)%n",
+                    threads, mbPerSec, mbPerSec / baseline, tokens);
+        }
+    }
+
+    // Generate a program of roughly the given size in the lexer's token language,
+    // including multi-line comments so that some chunk cuts fall inside them.
+    static String generate(int size, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(size + 256);
+        String[] names = {"x", "count", "total", "value", "idx", "alpha", "beta"};
+        while (sb.length() < size) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    sb.append("/* block comment\n   spanning lines ").append(random.nextInt(1000)).append(" */\n");
+                    break;
+                case 1:
+                    sb.append("// line comment ").append(random.nextInt(1000)).append('\n');
+                    break;
+                case 2:
+                    sb.append("if (").append(names[random.nextInt(names.length)]).append(" > 0) { ")
+                      .append(names[random.nextInt(names.length)]).append(" = true; }\n");
+                    break;
+                default:
+                    sb.append(names[random.nextInt(names.length)]).append(" = ")
+                      .append(names[random.nextInt(names.length)]).append(" + ")
+                      .append(random.nextInt(10000)).append('.').append(random.nextInt(100)).append(";\n");
+            }
+        }
+        return sb.toString();
+    }
+}
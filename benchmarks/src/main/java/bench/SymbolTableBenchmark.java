@@ -0,0 +1,51 @@
+package bench;
+
+import lexer.SymbolTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// SymbolTable at 1k, 10k and 100k symbols. addSymbol fills a fresh table, so one
+// operation is all n declarations; hasSymbol is one lookup, alternating hits and misses.
+@State(Scope.Thread)
+public class SymbolTableBenchmark extends BenchmarkDefaults {
+    @Param({"1000", "10000", "100000"})
+    int symbols;
+
+    String[] names;
+    String[] missing;
+    SymbolTable table;
+    int next;
+
+    @Setup
+    public void setUp() {
+        names = new String[symbols];
+        missing = new String[symbols];
+        for (int i = 0; i < symbols; i++) {
+            names[i] = "sym" + i;
+            missing[i] = "nosym" + i;
+        }
+        table = fill();
+    }
+
+    @Benchmark
+    public SymbolTable addSymbol() {
+        return fill();
+    }
+
+    @Benchmark
+    public boolean hasSymbol() {
+        int i = next >> 1;
+        String name = (next & 1) == 0 ? names[i] : missing[i];
+        next = next + 1 == 2 * symbols ? 0 : next + 1;
+        return table.hasSymbol(name);
+    }
+
+    private SymbolTable fill() {
+        SymbolTable table = new SymbolTable();
+        for (String name : names) table.addSymbol(name, "int", "0", "Global");
+        return table;
+    }
+}
@@ -0,0 +1,60 @@
+package lexer;
+
+import dfa.CompiledDFA;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The fast paths must give the tokens stepping the DFA through every character gives,
+// and so must the generated scanner.
+class FastPathsTest {
+
+    @Test
+    void nonAsciiTokenStartsAreNotSkipped() {
+        CompiledDFA dfa = RegexCompiler.compileUncached("[α-ω]+|x", EnumSet.noneOf(RegexCompiler.Option.class));
+        String input = "αβ x γ";
+        List<String> expected = List.of("0-2", "3-4", "5-6");
+        assertEquals(expected, scan(new DFAScanner(dfa, false), input));
+        assertEquals(expected, scan(new DFAScanner(dfa), input));
+        assertEquals(expected, scan(DFAScanner.generated(dfa), input));
+    }
+
+    @Test
+    void highBytesThatStartTokensAreNotSkipped() {
+        // [^ ] gives every non-ASCII character one class, so UTF-8 bytes step through it.
+        CompiledDFA dfa = RegexCompiler.compileUncached("[^ ]+", EnumSet.noneOf(RegexCompiler.Option.class));
+        ByteBuffer input = ByteBuffer.wrap("αβ x γ".getBytes(StandardCharsets.UTF_8));
+        List<String> expected = List.of("0-4", "5-6", "7-9");
+        assertEquals(expected, scan(new DFAScanner(dfa, false), input));
+        assertEquals(expected, scan(new DFAScanner(dfa), input));
+        assertEquals(expected, scan(DFAScanner.generated(dfa), input));
+    }
+
+    @Test
+    void scannersAgreeOnMixedText() {
+        CompiledDFA dfa = RegexCompiler.compileUncached("[α-ω]+|[a-z]+|[0-9]+|é",
+                EnumSet.noneOf(RegexCompiler.Option.class));
+        String input = "  λx 12é\n\tωω — abc  ζ9 ";
+        List<String> expected = scan(new DFAScanner(dfa, false), input);
+        assertEquals(expected, scan(new DFAScanner(dfa), input));
+        assertEquals(expected, scan(DFAScanner.generated(dfa), input));
+    }
+
+    private static List<String> scan(DFAScanner scanner, CharSequence input) {
+        List<String> tokens = new ArrayList<>();
+        scanner.scan(input, (type, start, end) -> tokens.add(start + "-" + end));
+        return tokens;
+    }
+
+    private static List<String> scan(DFAScanner scanner, ByteBuffer input) {
+        List<String> tokens = new ArrayList<>();
+        scanner.scan(input, 0, input.limit(), (type, start, end) -> tokens.add(start + "-" + end));
+        return tokens;
+    }
+}
@@ -0,0 +1,155 @@
+package lexer;
+
+import errorHandler.Diagnostic;
+import errorHandler.ErrorHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// IncrementalCompiler's contract: after any edit, its tokens, diagnostics and symbol table
+// are the same as lexing, running ErrorHandler and running FinalSTable over the whole
+// source again.
+class IncrementalCompilerTest {
+    // Pieces random sources are made of: declarations, assignments to spellings of one
+    // name (for SIMILAR_NAME), braces and calls (for scopes), and comments whose ends can
+    // come and go (an unclosed /* reads to the end of the source).
+    private static final String[] PIECES = {
+            "int ", "float ", "char ", "final ", "String ", "Scanner ", "x", "X", "xy", "xY", "Xy", "y", "z",
+            " = ", "=", " ", "\n", ";", ";", ";", "{", "}", "(", ")", "1.5", "1.123456", "3", "+", "-", "*",
+            "'a'", "//c\n", "/*c*/", "/*", "*/", "void f", "main", "if", "2.", "7"
+    };
+    private static final String[] NAMES = {"x", "X", "xy", "xY", "Xy", "y", "z", "f", "main", "s", "Scanner"};
+
+    @Test
+    void randomEditsMatchAFullRun() {
+        for (long seed = 0; seed < 100; seed++) {
+            Random random = new Random(seed);
+            StringBuilder text = new StringBuilder(snippet(random, random.nextInt(300)));
+            IncrementalCompiler compiler = new IncrementalCompiler(text.toString());
+            assertMatchesFullRun(compiler, text, "seed " + seed);
+            for (int edit = 1; edit <= 60; edit++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(4) == 0 ? 0
+                        : Math.min(text.length() - offset, random.nextInt(random.nextBoolean() ? 3 : 30));
+                String inserted = random.nextInt(4) == 0 ? "" : snippet(random, 1 + random.nextInt(random.nextBoolean() ? 2 : 8));
+                text.replace(offset, offset + removed, inserted);
+                compiler.edit(offset, removed, inserted);
+                assertMatchesFullRun(compiler, text, "seed " + seed + ", edit " + edit);
+            }
+        }
+    }
+
+    @Test
+    void unclosedCommentFarBeforeTheEdit() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) text.append("int x").append(i).append(" = ").append(i).append(";\n");
+        IncrementalCompiler compiler = new IncrementalCompiler(text.toString());
+        // Open a comment near the start, so its scan reads to the end of the source, then
+        // edit well past the point the lexer looks back to for ordinary tokens.
+        edit(compiler, text, 10, 0, "/*");
+        edit(compiler, text, text.length() - 30, 0, "*/");
+        edit(compiler, text, text.length() - 100, 2, "");
+        edit(compiler, text, 400, 0, "*/ int X = 2;");
+        edit(compiler, text, 10, 2, "");
+        edit(compiler, text, text.length(), 0, "/* never closed");
+        edit(compiler, text, 200, 5, "float y = 1.1234567;");
+    }
+
+    @Test
+    void scopesOpenAndCloseAcrossStatements() {
+        StringBuilder text = new StringBuilder("int x = 1;\nvoid f() {\n  int x = 2;\n  y = x;\n}\nx = 3;\nint y;\n");
+        IncrementalCompiler compiler = new IncrementalCompiler(text.toString());
+        int close = text.indexOf("}");
+        edit(compiler, text, close, 1, "");
+        edit(compiler, text, 0, 0, "{");
+        edit(compiler, text, text.length(), 0, "}}");
+        edit(compiler, text, text.indexOf("void f()"), 8, "main()");
+        edit(compiler, text, 1, 0, "}");
+        edit(compiler, text, 0, 2, "");
+    }
+
+    @Test
+    void similarNamesReorderAcrossStatements() {
+        StringBuilder text = new StringBuilder("xy = 1;\nint a = 0;\nXy = 2;\nint b = 0;\nxY = 3;\nxy = 4;\nXy = 5;\n");
+        IncrementalCompiler compiler = new IncrementalCompiler(text.toString());
+        // Remove the first use of xy, so Xy is seen first; bring xY to the front; then
+        // move the first Xy past the others.
+        edit(compiler, text, 0, "xy = 1;\n".length(), "");
+        edit(compiler, text, 0, 0, "xY = 0;\n");
+        int xy = text.indexOf("Xy = 2;");
+        edit(compiler, text, xy, "Xy = 2;".length(), "y = 2;");
+        edit(compiler, text, text.length(), 0, "Xy = 6;\nxy = 7;\n");
+        edit(compiler, text, 0, text.indexOf("int b"), "");
+    }
+
+    private static void edit(IncrementalCompiler compiler, StringBuilder text, int offset, int removed, String inserted) {
+        text.replace(offset, offset + removed, inserted);
+        compiler.edit(offset, removed, inserted);
+        assertMatchesFullRun(compiler, text, "edit at " + offset);
+    }
+
+    private static void assertMatchesFullRun(IncrementalCompiler compiler, CharSequence text, String where) {
+        String source = text.toString();
+        String context = where + " of:\n" + source;
+        assertEquals(source, compiler.source().toString(), context);
+
+        assertEquals(tokens(Lexer.tokenizeToBuffer(source)), tokens(compiler.tokens()), context);
+
+        ErrorHandler errors = new ErrorHandler();
+        errors.checkErrors(source);
+        assertEquals(diagnostics(errors.diagnostics()), diagnostics(compiler.diagnostics()), context);
+        assertEquals(errors.errors(), compiler.errors(), context);
+
+        FinalSTable table = new FinalSTable();
+        table.processTokens(Lexer.tokenizeToBuffer(source));
+        assertEquals(dump(table.symbolTable()), dump(compiler.symbolTable()), context);
+    }
+
+    private static String snippet(Random random, int pieces) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < pieces; i++) sb.append(PIECES[random.nextInt(PIECES.length)]);
+        return sb.toString();
+    }
+
+    private static List<String> tokens(TokenList tokens) {
+        List<String> list = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            list.add(tokens.type(i) + "@" + tokens.start(i) + "+" + tokens.length(i));
+        }
+        return list;
+    }
+
+    private static List<String> diagnostics(List<Diagnostic> diagnostics) {
+        List<String> list = new ArrayList<>(diagnostics.size());
+        for (Diagnostic d : diagnostics) {
+            list.add(d.code + " " + d.offset + " " + d.line + ":" + d.column + " " + d.subject + " " + d.other);
+        }
+        return list;
+    }
+
+    // The table as display() prints it, with its open scopes and what lookups find.
+    private static String dump(SymbolTable table) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try {
+            table.display();
+        } finally {
+            System.setOut(out);
+        }
+        StringBuilder sb = new StringBuilder(bytes.toString(StandardCharsets.UTF_8));
+        sb.append(table.currentScope()).append(' ').append(table.depth()).append(' ').append(table.size()).append('\n');
+        for (String name : NAMES) {
+            sb.append(name).append(": ").append(table.hasSymbol(name)).append(' ').append(table.getType(name))
+                    .append(' ').append(table.getValue(name)).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package dfa;
+
+// A deterministic automaton that a scanner can step through one character at a time.
+// States are ints, the start state is start(), and DEAD means there is no transition.
+public interface Automaton {
+    int DEAD = -1;
+
+    int start();
+
+    // Take one transition, returning DEAD if there is none.
+    int step(int state, char c);
+
+    // Take one transition on a byte of an ASCII-compatible encoding. Bytes of multi-byte
+    // characters (0x80 and up) have no transition unless an implementation can tell that
+    // every non-ASCII character would take the same one.
+    default int stepByte(int state, int b) {
+        return b < 128 ? step(state, (char) b) : DEAD;
+    }
+
+    // Token type accepted in the given state, or -1 if the state is not accepting.
+    int acceptType(int state);
+}
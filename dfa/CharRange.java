@@ -0,0 +1,46 @@
+package dfa;
+
+// Inclusive range of UTF-16 code units, used as a transition label.
+// The ranges on a DFA's transitions are disjoint, so each one stands for a whole set of
+// characters that every state treats alike.
+public final class CharRange implements Comparable<CharRange> {
+    public final char low;
+    public final char high;
+
+    public CharRange(char low, char high) {
+        if (low > high) throw new IllegalArgumentException("Empty range: " + (int) low + ".." + (int) high);
+        this.low = low;
+        this.high = high;
+    }
+
+    public boolean contains(char c) {
+        return low <= c && c <= high;
+    }
+
+    public int size() {
+        return high - low + 1;
+    }
+
+    @Override
+    public int compareTo(CharRange other) {
+        return low != other.low ? Character.compare(low, other.low) : Character.compare(high, other.high);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof CharRange)) return false;
+        CharRange other = (CharRange) o;
+        return low == other.low && high == other.high;
+    }
+
+    @Override
+    public int hashCode() {
+        return low << 16 | high;
+    }
+
+    @Override
+    public String toString() {
+        if (low == high) return String.valueOf(low);
+        return low + "-" + high;
+    }
+}
@@ -0,0 +1,288 @@
+package dfa;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// Frozen, table-driven form of a DFA.
+// States are dense ints (the start state is always 0) and transitions live in a flat
+// int[] indexed by state * numClasses + charClass. Characters are first mapped to
+// equivalence classes: two characters share a class when every state sends them to
+// the same place. Class 0 is reserved for characters that never have a transition.
+// Below 128 the class is a table lookup; above, classes are kept as sorted character
+// ranges found by binary search, so wide Unicode classes cost one entry per range.
+// On bytes, 0x80 and up step like a non-ASCII character when every non-ASCII character
+// shares one class (as inside a comment body), so UTF-8 text runs through such states.
+// Simulating a CompiledDFA does no allocation and no hashing.
+public final class CompiledDFA implements Automaton {
+
+    private final int numStates;
+    private final int numClasses;
+    private final byte[] asciiClasses;   // class of each char below 128
+    private final char[] wideLows;       // sorted, disjoint ranges of chars >= 128 that
+    private final char[] wideHighs;      // have a class: [wideLows[i], wideHighs[i]]
+    private final byte[] wideClasses;    // class of range i
+    private final int highByteClass;     // class of bytes 0x80 and up, 0 if none
+    private final int[] table;
+    private final long[] accepting;      // bitset over states
+    private final int[] acceptTypes;     // token type of each state, -1 if not accepting
+
+    CompiledDFA(int numStates, int numClasses, byte[] asciiClasses, char[] wideLows,
+                char[] wideHighs, byte[] wideClasses, int[] table, int[] acceptTypes) {
+        this.numStates = numStates;
+        this.numClasses = numClasses;
+        this.asciiClasses = asciiClasses;
+        this.wideLows = wideLows;
+        this.wideHighs = wideHighs;
+        this.wideClasses = wideClasses;
+        this.highByteClass = wideLows.length == 1 && wideLows[0] == 128 && wideHighs[0] == Character.MAX_VALUE
+                ? wideClasses[0] & 0xFF : 0;
+        this.table = table;
+        this.acceptTypes = acceptTypes;
+        this.accepting = new long[(numStates + 63) >>> 6];
+        for (int s = 0; s < numStates; s++) {
+            if (acceptTypes[s] >= 0) {
+                accepting[s >>> 6] |= 1L << s;
+            }
+        }
+    }
+
+    // Freeze a DFA built by subset construction into its compiled form.
+    public static CompiledDFA compile(DFA dfa) {
+        // Number the states densely in BFS order so that the start state is 0.
+        Map<DFAState, Integer> index = new HashMap<>();
+        List<DFAState> order = new ArrayList<>();
+        index.put(dfa.start, 0);
+        order.add(dfa.start);
+        for (int i = 0; i < order.size(); i++) {
+            Map<CharRange, DFAState> row = dfa.transitionTable.get(order.get(i));
+            if (row == null) continue;
+            for (DFAState next : row.values()) {
+                if (!index.containsKey(next)) {
+                    index.put(next, order.size());
+                    order.add(next);
+                }
+            }
+        }
+        int n = order.size();
+
+        // Group character ranges whose transition columns are identical.
+        List<CharRange> symbols = new ArrayList<>(dfa.alphabet);
+        Collections.sort(symbols);
+        Map<List<Integer>, Integer> columnClasses = new HashMap<>();
+        List<int[]> columns = new ArrayList<>();
+        Map<CharRange, Integer> classOf = new HashMap<>();
+        for (CharRange symbol : symbols) {
+            Integer[] column = new Integer[n];
+            boolean live = false;
+            for (int s = 0; s < n; s++) {
+                Map<CharRange, DFAState> row = dfa.transitionTable.get(order.get(s));
+                DFAState next = row == null ? null : row.get(symbol);
+                column[s] = next == null ? DEAD : index.get(next);
+                live |= next != null;
+            }
+            if (!live) continue;
+            List<Integer> key = Arrays.asList(column);
+            Integer cls = columnClasses.get(key);
+            if (cls == null) {
+                cls = columns.size() + 1;
+                if (cls > 255) {
+                    throw new IllegalStateException("Too many character classes: " + cls);
+                }
+                columnClasses.put(key, cls);
+                int[] col = new int[n];
+                for (int s = 0; s < n; s++) col[s] = column[s];
+                columns.add(col);
+            }
+            classOf.put(symbol, cls);
+        }
+        int k = columns.size() + 1;
+
+        byte[] asciiClasses = new byte[128];
+        List<CharRange> wide = new ArrayList<>();
+        List<Integer> wideClassList = new ArrayList<>();
+        for (CharRange symbol : symbols) {
+            Integer cls = classOf.get(symbol);
+            if (cls == null) continue;
+            for (int c = symbol.low; c <= symbol.high && c < 128; c++) {
+                asciiClasses[c] = (byte) (int) cls;
+            }
+            if (symbol.high < 128) continue;
+            char low = (char) Math.max(symbol.low, 128);
+            int last = wide.size() - 1;
+            if (last >= 0 && wide.get(last).high + 1 == low && wideClassList.get(last).equals(cls)) {
+                wide.set(last, new CharRange(wide.get(last).low, symbol.high));
+            } else {
+                wide.add(new CharRange(low, symbol.high));
+                wideClassList.add(cls);
+            }
+        }
+        char[] wideLows = new char[wide.size()];
+        char[] wideHighs = new char[wide.size()];
+        byte[] wideClasses = new byte[wide.size()];
+        for (int i = 0; i < wideLows.length; i++) {
+            wideLows[i] = wide.get(i).low;
+            wideHighs[i] = wide.get(i).high;
+            wideClasses[i] = (byte) (int) wideClassList.get(i);
+        }
+
+        int[] table = new int[n * k];
+        Arrays.fill(table, DEAD);
+        for (int cls = 1; cls < k; cls++) {
+            int[] col = columns.get(cls - 1);
+            for (int s = 0; s < n; s++) {
+                table[s * k + cls] = col[s];
+            }
+        }
+
+        int[] acceptTypes = new int[n];
+        for (int s = 0; s < n; s++) {
+            DFAState state = order.get(s);
+            acceptTypes[s] = state.isFinal ? state.tokenType : -1;
+        }
+        return new CompiledDFA(n, k, asciiClasses, wideLows, wideHighs, wideClasses, table, acceptTypes);
+    }
+
+    @Override
+    public int start() {
+        return 0;
+    }
+
+    public int stateCount() {
+        return numStates;
+    }
+
+    public int classCount() {
+        return numClasses;
+    }
+
+    // Map a character to its equivalence class (0 if it never has a transition).
+    public int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c] & 0xFF;
+        }
+        int i = Arrays.binarySearch(wideLows, c);
+        if (i < 0) {
+            i = -i - 2;
+            if (i < 0 || c > wideHighs[i]) return 0;
+        }
+        return wideClasses[i] & 0xFF;
+    }
+
+    @Override
+    public int step(int state, char c) {
+        return table[state * numClasses + classOf(c)];
+    }
+
+    @Override
+    public int stepByte(int state, int b) {
+        return table[state * numClasses + (b < 128 ? asciiClasses[b] & 0xFF : highByteClass)];
+    }
+
+    public boolean isAccepting(int state) {
+        return (accepting[state >>> 6] & (1L << state)) != 0;
+    }
+
+    @Override
+    public int acceptType(int state) {
+        return acceptTypes[state];
+    }
+
+    // Raw transition lookup by class, used by passes that rewrite the table.
+    int next(int state, int cls) {
+        return table[state * numClasses + cls];
+    }
+
+    // Return a copy of this DFA with the same character classes but new states.
+    CompiledDFA withStates(int numStates, int[] table, int[] acceptTypes) {
+        return new CompiledDFA(numStates, numClasses, asciiClasses, wideLows, wideHighs, wideClasses, table, acceptTypes);
+    }
+
+    // Number of bytes writeTo needs.
+    int serializedSize() {
+        return 4 + 4 + 128 + 4 + wideLows.length * 5 + table.length * 4 + numStates * 4;
+    }
+
+    // Write the tables in the layout readFrom expects.
+    void writeTo(ByteBuffer out) {
+        out.putInt(numStates);
+        out.putInt(numClasses);
+        out.put(asciiClasses);
+        out.putInt(wideLows.length);
+        for (int i = 0; i < wideLows.length; i++) {
+            out.putChar(wideLows[i]);
+            out.putChar(wideHighs[i]);
+        }
+        out.put(wideClasses);
+        putInts(out, table);
+        putInts(out, acceptTypes);
+    }
+
+    // Read tables written by writeTo. Throws IllegalArgumentException if they are not
+    // self-consistent, and BufferUnderflowException if they are cut short.
+    static CompiledDFA readFrom(ByteBuffer in) {
+        int numStates = in.getInt();
+        int numClasses = in.getInt();
+        if (numStates < 1 || numClasses < 1 || numClasses > 256
+                || (long) numStates * numClasses > in.remaining() / 4) {
+            throw new IllegalArgumentException("Bad table size: " + numStates + " x " + numClasses);
+        }
+        byte[] asciiClasses = new byte[128];
+        in.get(asciiClasses);
+        int wide = in.getInt();
+        if (wide < 0 || wide > in.remaining() / 5) {
+            throw new IllegalArgumentException("Bad wide class count: " + wide);
+        }
+        char[] wideLows = new char[wide];
+        char[] wideHighs = new char[wide];
+        for (int i = 0; i < wide; i++) {
+            wideLows[i] = in.getChar();
+            wideHighs[i] = in.getChar();
+            if (wideLows[i] < 128 || wideHighs[i] < wideLows[i] || (i > 0 && wideLows[i] <= wideHighs[i - 1])) {
+                throw new IllegalArgumentException("Bad wide class range " + i);
+            }
+        }
+        byte[] wideClasses = new byte[wide];
+        in.get(wideClasses);
+        for (byte cls : asciiClasses) checkRange(cls & 0xFF, numClasses);
+        for (byte cls : wideClasses) checkRange(cls & 0xFF, numClasses);
+        int[] table = getInts(in, numStates * numClasses);
+        for (int next : table) {
+            if (next != DEAD) checkRange(next, numStates);
+        }
+        int[] acceptTypes = getInts(in, numStates);
+        return new CompiledDFA(numStates, numClasses, asciiClasses, wideLows, wideHighs, wideClasses, table, acceptTypes);
+    }
+
+    // Bulk copies through an int view, so loading does not go int by int.
+    private static void putInts(ByteBuffer out, int[] values) {
+        out.asIntBuffer().put(values);
+        out.position(out.position() + values.length * 4);
+    }
+
+    private static int[] getInts(ByteBuffer in, int count) {
+        if (count > in.remaining() / 4) throw new BufferUnderflowException();
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + count * 4);
+        return values;
+    }
+
+    private static void checkRange(int value, int bound) {
+        if (value < 0 || value >= bound) {
+            throw new IllegalArgumentException("Table entry out of range: " + value);
+        }
+    }
+
+    // Run the whole input through the DFA and report whether it ends in an accepting state.
+    public boolean matches(CharSequence input) {
+        int state = 0;
+        for (int i = 0, len = input.length(); i < len; i++) {
+            state = step(state, input.charAt(i));
+            if (state == DEAD) {
+                return false;
+            }
+        }
+        return isAccepting(state);
+    }
+}
@@ -5,8 +5,7 @@ import java.util.*;
 public class DFA {
     public DFAState start;
     public Set<DFAState> states = new HashSet<>();
-    public Set<Character> alphabet = new HashSet<>();
-    public Map<DFAState, Map<Character, DFAState>> transitionTable = new HashMap<>();
+    public SortedSet<CharRange> alphabet = new TreeSet<>();
+    public Map<DFAState, Map<CharRange, DFAState>> transitionTable = new HashMap<>();
     public Set<DFAState> finalStates = new HashSet<>();
 }
-
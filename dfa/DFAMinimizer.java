@@ -0,0 +1,174 @@
+package dfa;
+
+import java.util.*;
+
+// Hopcroft's partition-refinement minimization for compiled DFAs.
+// States start out grouped by the token type they accept (non-accepting states form one
+// group), so accepting states for different token types are never merged. Runs in
+// O(n k log n) for n states and k character classes.
+public class DFAMinimizer {
+
+    public static CompiledDFA minimize(CompiledDFA dfa) {
+        int n = dfa.stateCount();
+        int k = dfa.classCount();
+        int total = n + 1;          // state n is an explicit sink standing in for DEAD
+        int sink = n;
+
+        // Inverse transitions in CSR form: predecessors of t on class c are
+        // preds[predStart[t * k + c] .. predStart[t * k + c + 1]).
+        int[] predStart = new int[total * k + 1];
+        for (int s = 0; s < total; s++) {
+            for (int c = 0; c < k; c++) {
+                predStart[target(dfa, s, c, sink) * k + c + 1]++;
+            }
+        }
+        for (int i = 0; i < total * k; i++) {
+            predStart[i + 1] += predStart[i];
+        }
+        int[] preds = new int[total * k];
+        int[] fill = Arrays.copyOf(predStart, total * k);
+        for (int s = 0; s < total; s++) {
+            for (int c = 0; c < k; c++) {
+                preds[fill[target(dfa, s, c, sink) * k + c]++] = s;
+            }
+        }
+
+        // The partition: block b holds elems[first[b] .. end[b]), and the marked states of a
+        // block are gathered at its front, elems[first[b] .. first[b] + marked[b]).
+        int[] elems = new int[total];
+        int[] loc = new int[total];
+        int[] blockOf = new int[total];
+        int[] first = new int[total];
+        int[] end = new int[total];
+        int[] marked = new int[total];
+        int blocks = 0;
+
+        Map<Integer, Integer> initial = new LinkedHashMap<>();
+        for (int s = 0; s < total; s++) {
+            int label = s == sink ? -1 : dfa.acceptType(s);
+            Integer b = initial.get(label);
+            if (b == null) {
+                b = blocks++;
+                initial.put(label, b);
+            }
+            blockOf[s] = b;
+            end[b]++;
+        }
+        for (int b = 0, pos = 0; b < blocks; b++) {
+            first[b] = pos;
+            pos += end[b];
+            end[b] = first[b];
+        }
+        for (int s = 0; s < total; s++) {
+            int b = blockOf[s];
+            elems[end[b]] = s;
+            loc[s] = end[b]++;
+        }
+
+        // Worklist of (block, class) splitters.
+        boolean[] pending = new boolean[total * k];
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        for (int b = 0; b < blocks; b++) {
+            for (int c = 0; c < k; c++) {
+                pending[b * k + c] = true;
+                work.add(b * k + c);
+            }
+        }
+
+        int[] touched = new int[total];
+        int[] splitter = new int[total];
+        while (!work.isEmpty()) {
+            int item = work.poll();
+            pending[item] = false;
+            int b = item / k;
+            int c = item % k;
+
+            // Snapshot the splitter, since marking may reorder its block.
+            int size = end[b] - first[b];
+            System.arraycopy(elems, first[b], splitter, 0, size);
+
+            int touchedCount = 0;
+            for (int i = 0; i < size; i++) {
+                int t = splitter[i];
+                for (int p = predStart[t * k + c]; p < predStart[t * k + c + 1]; p++) {
+                    int s = preds[p];
+                    int x = blockOf[s];
+                    int m = first[x] + marked[x];
+                    if (loc[s] < m) continue;        // already marked
+                    if (marked[x] == 0) touched[touchedCount++] = x;
+                    // Swap s into the marked prefix of its block.
+                    int other = elems[m];
+                    elems[m] = s;
+                    elems[loc[s]] = other;
+                    loc[other] = loc[s];
+                    loc[s] = m;
+                    marked[x]++;
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                int x = touched[i];
+                int m = marked[x];
+                marked[x] = 0;
+                if (m == end[x] - first[x]) continue;    // every state marked: no split
+
+                int y = blocks++;
+                first[y] = first[x];
+                end[y] = first[x] + m;
+                first[x] = end[y];
+                for (int j = first[y]; j < end[y]; j++) {
+                    blockOf[elems[j]] = y;
+                }
+                int smaller = (end[y] - first[y]) <= (end[x] - first[x]) ? y : x;
+                for (int d = 0; d < k; d++) {
+                    if (pending[x * k + d]) {
+                        pending[y * k + d] = true;
+                        work.add(y * k + d);
+                    } else {
+                        pending[smaller * k + d] = true;
+                        work.add(smaller * k + d);
+                    }
+                }
+            }
+        }
+
+        // Renumber blocks in BFS order from the start state, dropping the sink's block.
+        int sinkBlock = blockOf[sink];
+        int[] newId = new int[blocks];
+        Arrays.fill(newId, -1);
+        int[] repr = new int[blocks];
+        int[] order = new int[blocks];
+        int count = 0;
+        newId[blockOf[0]] = count;
+        order[count++] = blockOf[0];
+        for (int i = 0; i < count; i++) {
+            int rep = elems[first[order[i]]];
+            repr[i] = rep;
+            for (int c = 0; c < k; c++) {
+                int t = blockOf[target(dfa, rep, c, sink)];
+                if (t != sinkBlock && newId[t] < 0) {
+                    newId[t] = count;
+                    order[count++] = t;
+                }
+            }
+        }
+
+        int[] table = new int[count * k];
+        int[] acceptTypes = new int[count];
+        for (int i = 0; i < count; i++) {
+            int rep = repr[i];
+            acceptTypes[i] = dfa.acceptType(rep);
+            for (int c = 0; c < k; c++) {
+                int t = blockOf[target(dfa, rep, c, sink)];
+                table[i * k + c] = t == sinkBlock ? CompiledDFA.DEAD : newId[t];
+            }
+        }
+        return dfa.withStates(count, table, acceptTypes);
+    }
+
+    private static int target(CompiledDFA dfa, int state, int cls, int sink) {
+        if (state == sink) return sink;
+        int next = dfa.next(state, cls);
+        return next == CompiledDFA.DEAD ? sink : next;
+    }
+}
@@ -1,14 +1,14 @@
 package dfa;
 
-import nfa.State;
-import java.util.Set;
+import java.util.BitSet;
 
 public class DFAState {
-    public Set<State> nfaStates;
+    public BitSet nfaStates;    // dense ids of the NFA states this state stands for
     public int id;
     public boolean isFinal;
+    public int tokenType;   // token type accepted here when isFinal (highest priority wins)
 
-    public DFAState(Set<State> nfaStates, int id) {
+    public DFAState(BitSet nfaStates, int id) {
         this.nfaStates = nfaStates;
         this.id = id;
     }
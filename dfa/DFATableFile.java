@@ -0,0 +1,76 @@
+package dfa;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Versioned binary file holding one or more CompiledDFAs, so finished automata can be
+// loaded instead of rebuilt from their NFAs.
+// Layout (big-endian): magic "LXDF", format version, the fingerprint of the grammar the
+// tables were built from, the number of automata, the tables of each in turn, and a
+// CRC-32 of everything before it. A file that is missing, damaged, of another version or
+// built from another grammar reads as null, and the caller rebuilds.
+public final class DFATableFile {
+    public static final int MAGIC = 0x4C584446;  // "LXDF"
+    public static final int VERSION = 3;
+
+    private static final int HEADER = 4 + 4 + 8 + 4;
+
+    private DFATableFile() {
+    }
+
+    // Write the tables atomically: readers see either the old file or the complete new one.
+    public static void write(Path file, List<CompiledDFA> dfas, long fingerprint) throws IOException {
+        int size = HEADER + 8;
+        for (CompiledDFA dfa : dfas) size += dfa.serializedSize();
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC);
+        buf.putInt(VERSION);
+        buf.putLong(fingerprint);
+        buf.putInt(dfas.size());
+        for (CompiledDFA dfa : dfas) dfa.writeTo(buf);
+        buf.putLong(crc(buf.array(), buf.position()));
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, buf.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Load the tables, in the order they were written, or return null if the file does
+    // not hold valid tables for the grammar with the given fingerprint.
+    public static List<CompiledDFA> read(Path file, long fingerprint) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < HEADER + 8) return null;
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (buf.getLong(bytes.length - 8) != crc(bytes, bytes.length - 8)) return null;
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION || buf.getLong() != fingerprint) {
+            return null;
+        }
+        int count = buf.getInt();
+        buf.limit(bytes.length - 8);
+        if (count < 0 || count > buf.remaining()) return null;
+        List<CompiledDFA> dfas = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) dfas.add(CompiledDFA.readFrom(buf));
+            return buf.hasRemaining() ? null : dfas;
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    private static long crc(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,217 @@
+package dfa;
+
+import nfa.DenseNFA;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+// DFA whose states are built from NFA state sets the first time a scan reaches them.
+// Startup only costs the dense NFA snapshot; each DFA state and each transition is built
+// on the first step that needs it and cached, so steady-state scanning runs at table
+// speed. The cache holds at most maxStates states: when it is full it is flushed and
+// refilled from the states in use. If flushes come so often that the cache stops paying
+// for itself, steps fall back to plain NFA simulation for a while before the cache is
+// tried again. The cache is mutable, so a LazyDFA must not be shared between threads.
+public final class LazyDFA implements Automaton {
+    public static final int DEFAULT_MAX_STATES = 10_000;
+
+    private static final int UNKNOWN = -2;        // transition not built yet
+    private static final int STEPS_PER_STATE = 10; // fewer steps than this per state built is thrashing
+    private static final int THRASH_FLUSHES = 3;   // thrashing flushes in a row before simulating
+
+    private final DenseNFA nfa;
+    private final int width;                       // alphabet size, one table column per interval
+    private final int maxStates;
+    private final int[] asciiSymbols = new int[128];
+    private final int highByteSymbol;              // symbol of bytes 0x80 and up, -1 if none
+    private final BitSet startSet;
+    private final int startType;
+
+    private BitSet[] sets;
+    private int[] acceptTypes;
+    private int[] table;                           // table[state * width + symbol]
+    private int count;
+    private final Map<BitSet, Integer> ids = new HashMap<>();
+    private final BitSet move;
+
+    private long steps;
+    private long stepsAtFlush;
+    private int thrashing;
+    private int flushes;
+    private boolean simulating;
+    private long simulateUntil;
+    private final BitSet[] simSets = new BitSet[3]; // 0 is the start set, 1 and 2 alternate
+    private final int[] simTypes = new int[3];
+
+    public LazyDFA(DenseNFA nfa) {
+        this(nfa, DEFAULT_MAX_STATES);
+    }
+
+    public LazyDFA(DenseNFA nfa, int maxStates) {
+        if (maxStates < 2) throw new IllegalArgumentException("maxStates must be at least 2");
+        this.nfa = nfa;
+        this.width = nfa.alphabetSize();
+        this.maxStates = maxStates;
+        Arrays.fill(asciiSymbols, -1);
+        for (int i = 0; i < width && nfa.lows[i] < 128; i++) {
+            for (int c = nfa.lows[i]; c <= nfa.highs[i] && c < 128; c++) {
+                asciiSymbols[c] = i;
+            }
+        }
+        // Bytes of multi-byte characters step only when one interval holds every
+        // non-ASCII character, so they all take the same transitions.
+        int high = nfa.symbolOf((char) 128);
+        this.highByteSymbol = high >= 0 && nfa.highs[high] == Character.MAX_VALUE ? high : -1;
+        BitSet starts = new BitSet(nfa.size);
+        for (int s : nfa.starts) starts.set(s);
+        this.startSet = nfa.epsilonClosure(starts);
+        this.startType = nfa.acceptType(startSet);
+        this.move = new BitSet(nfa.size);
+        int capacity = Math.min(maxStates, 64);
+        this.sets = new BitSet[capacity];
+        this.acceptTypes = new int[capacity];
+        this.table = new int[capacity * width];
+        simSets[0] = startSet;
+        simSets[1] = new BitSet(nfa.size);
+        simSets[2] = new BitSet(nfa.size);
+        simTypes[0] = startType;
+        flush();
+    }
+
+    @Override
+    public int start() {
+        if (simulating && steps >= simulateUntil) {
+            // Give the cache another chance.
+            simulating = false;
+            thrashing = 0;
+            flush();
+        }
+        return 0;
+    }
+
+    @Override
+    public int step(int state, char c) {
+        return stepSymbol(state, c < 128 ? asciiSymbols[c] : nfa.symbolOf(c));
+    }
+
+    @Override
+    public int stepByte(int state, int b) {
+        return stepSymbol(state, b < 128 ? asciiSymbols[b] : highByteSymbol);
+    }
+
+    private int stepSymbol(int state, int symbol) {
+        if (symbol < 0) return DEAD;
+        steps++;
+        if (simulating) return simulate(state, symbol);
+        int next = table[state * width + symbol];
+        return next != UNKNOWN ? next : miss(state, symbol);
+    }
+
+    @Override
+    public int acceptType(int state) {
+        return simulating ? simTypes[state] : acceptTypes[state];
+    }
+
+    // Number of DFA states currently cached.
+    public int stateCount() {
+        return simulating ? 0 : count;
+    }
+
+    // Number of times the cache has been flushed.
+    public int flushCount() {
+        return flushes;
+    }
+
+    // Whether steps currently run by NFA simulation instead of the cache.
+    public boolean isSimulating() {
+        return simulating;
+    }
+
+    // Build the transition of state on symbol, adding the target state if it is new.
+    private int miss(int state, int symbol) {
+        BitSet next = target(sets[state], symbol, new BitSet(nfa.size));
+        if (next.isEmpty()) {
+            table[state * width + symbol] = DEAD;
+            return DEAD;
+        }
+        Integer known = ids.get(next);
+        if (known != null) {
+            table[state * width + symbol] = known;
+            return known;
+        }
+        if (count == maxStates) {
+            // The caller's state id dies with the flush; only the id returned here is
+            // valid afterwards, and the scanner never uses any other.
+            flushes++;
+            thrashing = steps - stepsAtFlush < (long) STEPS_PER_STATE * maxStates ? thrashing + 1 : 0;
+            stepsAtFlush = steps;
+            flush();
+            if (thrashing >= THRASH_FLUSHES) {
+                simulating = true;
+                simulateUntil = steps + (long) STEPS_PER_STATE * maxStates;
+                simSets[1].clear();
+                simSets[1].or(next);
+                simTypes[1] = nfa.acceptType(next);
+                return 1;
+            }
+            return add(next);
+        }
+        int id = add(next);
+        table[state * width + symbol] = id;
+        return id;
+    }
+
+    // One NFA simulation step. The current set lives in one of the two spare slots and the
+    // next set is built in the other.
+    private int simulate(int state, int symbol) {
+        int slot = state == 1 ? 2 : 1;
+        BitSet next = simSets[slot];
+        next.clear();
+        target(simSets[state], symbol, next);
+        if (next.isEmpty()) return DEAD;
+        simTypes[slot] = nfa.acceptType(next);
+        return slot;
+    }
+
+    // Epsilon closure of the states reachable from set on symbol, ORed into result.
+    private BitSet target(BitSet set, int symbol, BitSet result) {
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            int[] symbols = nfa.symbols[s];
+            int[] symbolEnds = nfa.symbolEnds[s];
+            for (int e = 0; e < symbols.length; e++) {
+                if (symbols[e] <= symbol && symbol <= symbolEnds[e]) move.set(nfa.targets[s][e]);
+            }
+        }
+        for (int s = move.nextSetBit(0); s >= 0; s = move.nextSetBit(s + 1)) {
+            result.or(nfa.closure(s));
+        }
+        move.clear();
+        return result;
+    }
+
+    private int add(BitSet set) {
+        if (count == sets.length) {
+            int capacity = Math.min(sets.length * 2, maxStates);
+            sets = Arrays.copyOf(sets, capacity);
+            acceptTypes = Arrays.copyOf(acceptTypes, capacity);
+            table = Arrays.copyOf(table, capacity * width);
+            Arrays.fill(table, count * width, table.length, UNKNOWN);
+        }
+        int id = count++;
+        sets[id] = set;
+        acceptTypes[id] = nfa.acceptType(set);
+        ids.put(set, id);
+        return id;
+    }
+
+    // Drop every cached state except the start state, which keeps id 0.
+    private void flush() {
+        Arrays.fill(sets, null);
+        Arrays.fill(table, UNKNOWN);
+        ids.clear();
+        count = 0;
+        add(startSet);
+    }
+}
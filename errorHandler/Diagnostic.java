@@ -0,0 +1,58 @@
+package errorHandler;
+
+// A problem ErrorHandler found: what it is, where it is and the text it is about.
+// Offsets are characters from the start of the source; line and column count from 1.
+// The message is only put together when it is asked for.
+public final class Diagnostic {
+
+    // The kinds of problem, each with its severity and message pattern. The pattern takes
+    // the subject and, for SIMILAR_NAME, the earlier spelling it clashes with.
+    public enum Code {
+        UPPERCASE_NAME("Error", "Variable '%s' contains uppercase letters"),
+        DECIMAL_PRECISION("Error", "Decimal '%s' exceeds " + ErrorHandler.MAX_DECIMAL_PLACES + " decimal places"),
+        SIMILAR_NAME("Warning", "Similar variable '%s' might cause confusion with '%s'");
+
+        public final String severity;
+        private final String pattern;
+
+        Code(String severity, String pattern) {
+            this.severity = severity;
+            this.pattern = pattern;
+        }
+    }
+
+    public final Code code;
+    public final long offset;
+    public final int line;
+    public final int column;
+    public final String subject;
+    public final String other;      // the clashing spelling for SIMILAR_NAME, otherwise null
+    private String message;
+
+    public Diagnostic(Code code, long offset, int line, int column, String subject, String other) {
+        this.code = code;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+        this.subject = subject;
+        this.other = other;
+    }
+
+    // The same diagnostic at another position.
+    public Diagnostic at(long offset, int line, int column) {
+        return new Diagnostic(code, offset, line, column, subject, other);
+    }
+
+    public String message() {
+        if (message == null) {
+            message = code.severity + ": " + String.format(code.pattern, subject, other)
+                    + " (Line " + line + ", Column " + column + ")";
+        }
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message();
+    }
+}
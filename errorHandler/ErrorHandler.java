@@ -1,61 +1,150 @@
 package errorHandler;
+import lexer.DFAScanner;
+import lexer.TokenStream;
+import lexer.TokenType;
+import metrics.Metrics;
+import metrics.PhaseEvent;
+
+import java.io.Reader;
 import java.util.*;
-import java.util.regex.*;
 
+// Checks a source for what the language forbids but the lexer lets through: variable
+// names with uppercase letters, decimals with more than MAX_DECIMAL_PLACES places, and
+// variables assigned under a spelling that differs only in case from an earlier one.
+// The checks are hooks on the token stream (see Checker), so they run inside the lexing
+// pass rather than going over the text again.
 public class ErrorHandler {
-    private List<String> errors = new ArrayList<>();
-    private int lineNumber = 1; // Assuming single-line input for now
+    public static final int MAX_DECIMAL_PLACES = 5;
+
+    private static final int COMMENT = TokenType.COMMENT.ordinal();
+    private static final int DECIMAL = TokenType.DECIMAL.ordinal();
+    private static final int ASSIGNMENT = TokenType.ASSIGNMENT.ordinal();
+    private static final int IDENTIFIER = TokenType.IDENTIFIER.ordinal();
+    private static final int UPPERCASE_IDENTIFIER = TokenType.UPPERCASE_IDENTIFIER.ordinal();
+
+    private final List<Diagnostic> diagnostics = new ArrayList<>();
 
-    // Method to check for errors
+    // Scan code once, with the checks hooked onto the scanner.
     public void checkErrors(String code) {
-        String[] tokens = code.split(";"); // Splitting by semicolon to process statements
-        Set<String> declaredVariables = new HashSet<>();
-        
-        for (String token : tokens) {
-            token = token.trim();
-            if (token.isEmpty()) continue;
-
-            // Check for capital letter in variable names (rule: only lowercase allowed)
-            Pattern varPattern = Pattern.compile("^([a-zA-Z]+)\\s*=.*");
-            Matcher varMatcher = varPattern.matcher(token);
-            if (varMatcher.find()) {
-                String varName = varMatcher.group(1);
-                if (!varName.matches("[a-z]+")) { // Only lowercase allowed
-                    errors.add("Error: Variable '" + varName + "' contains uppercase letters (Line " + lineNumber + ")");
-                }
-            }
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.CHECK_ERRORS);
+        Checker checker = new Checker(SourceText.of(code), null, new SimilarNames());
+        DFAScanner.forLexer().scan(code, checker);
+        Metrics.end(phase, checker.tokens);
+    }
 
-            // Check for incorrect decimal precision
-            Pattern decimalPattern = Pattern.compile("=\\s*([0-9]+\\.[0-9]+)");
-            Matcher decimalMatcher = decimalPattern.matcher(token);
-            if (decimalMatcher.find()) {
-                String decimalValue = decimalMatcher.group(1);
-                if (decimalValue.contains(".") && decimalValue.split("\\.")[1].length() > 5) {
-                    errors.add("Error: Decimal '" + decimalValue + "' exceeds 5 decimal places (Line " + lineNumber + ")");
-                }
-            }
+    // Check a source through a TokenStream, holding only the stream's buffer in memory.
+    public void checkErrors(Reader code) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.CHECK_ERRORS);
+        SourceText.Window window = new SourceText.Window();
+        TokenStream stream = new TokenStream(window.wrap(code));
+        Checker checker = new Checker(window, null, new SimilarNames());
+        while (stream.next()) {
+            checker.token(stream.type(), stream.start(), stream.end());
+        }
+        Metrics.end(phase, checker.tokens);
+    }
 
-            // Check for similar variable names (basic check: existing variable with a minor difference)
-            if (varMatcher.find()) {
-                String varName = varMatcher.group(1);
-                for (String declared : declaredVariables) {
-                    if (declared.equalsIgnoreCase(varName) && !declared.equals(varName)) {
-                        errors.add("Warning: Similar variable '" + varName + "' might cause confusion (Line " + lineNumber + ")");
-                    }
-                }
-                declaredVariables.add(varName);
-            }
+    // A hook for a lexing pass over source that checks each token and then hands it on
+    // to next, if there is one.
+    public Checker checker(CharSequence source, DFAScanner.TokenSink next) {
+        return new Checker(SourceText.of(source), next, new SimilarNames());
+    }
+
+    // As above, passing the assignments it sees to names for the similar-name check.
+    public Checker checker(CharSequence source, SimilarNames names) {
+        return new Checker(SourceText.of(source), null, names);
+    }
+
+    public List<Diagnostic> diagnostics() {
+        return Collections.unmodifiableList(diagnostics);
+    }
+
+    // The diagnostic messages, in source order.
+    public List<String> errors() {
+        List<String> messages = new ArrayList<>(diagnostics.size());
+        for (Diagnostic diagnostic : diagnostics) {
+            messages.add(diagnostic.message());
         }
+        return messages;
     }
 
     public void displayErrors() {
-        if (errors.isEmpty()) {
+        if (diagnostics.isEmpty()) {
             System.out.println("No errors found.");
         } else {
-            for (String error : errors) {
-                System.out.println(error);
+            for (Diagnostic diagnostic : diagnostics) {
+                System.out.println(diagnostic.message());
             }
         }
     }
-}
 
+    // Runs the checks on the tokens of one source, in order. Each check needs at most the
+    // token before the current one, so nothing is buffered:
+    //  - a name followed by '=' is an assignment: an UPPERCASE_IDENTIFIER there is reported,
+    //    and the name goes to the similar-name check;
+    //  - the scanner ends a DECIMAL after MAX_DECIMAL_PLACES places, so a digit right after
+    //    one means the literal has too many.
+    public final class Checker implements DFAScanner.TokenSink {
+        private final SourceText text;
+        private final DFAScanner.TokenSink next;
+        private final SimilarNames names;
+        private int prevType = -1;      // the last token that was not a comment
+        private long prevStart;
+        private long prevEnd;
+        private long tokens;
+
+        private Checker(SourceText text, DFAScanner.TokenSink next, SimilarNames names) {
+            this.text = text;
+            this.next = next;
+            this.names = names;
+        }
+
+        @Override
+        public void token(int type, int start, int end) {
+            token(type, (long) start, (long) end);
+            if (next != null) next.token(type, start, end);
+        }
+
+        public void token(int type, long start, long end) {
+            tokens++;
+            if (type == COMMENT) return;
+            if (prevType == DECIMAL && start == prevEnd && isDigit(text.charAt(start))) {
+                tooManyPlaces(end);
+            }
+            if (type == ASSIGNMENT && (prevType == IDENTIFIER || prevType == UPPERCASE_IDENTIFIER)) {
+                assigned();
+            }
+            text.release(start);
+            prevType = type;
+            prevStart = start;
+            prevEnd = end;
+        }
+
+        private void tooManyPlaces(long end) {
+            long last = prevEnd;
+            while (last < end && isDigit(text.charAt(last))) last++;
+            report(Diagnostic.Code.DECIMAL_PRECISION, text.text(prevStart, last), null);
+        }
+
+        private void assigned() {
+            String name = text.text(prevStart, prevEnd);
+            if (prevType == UPPERCASE_IDENTIFIER) {
+                report(Diagnostic.Code.UPPERCASE_NAME, name, null);
+            }
+            for (String spelling : names.assigned(name, prevStart)) {
+                report(Diagnostic.Code.SIMILAR_NAME, name, spelling);
+            }
+        }
+
+        // Every diagnostic is about the previous token.
+        private void report(Diagnostic.Code code, String subject, String other) {
+            diagnostics.add(new Diagnostic(code, prevStart, text.line(prevStart), text.column(prevStart),
+                    subject, other));
+            Metrics.errors(1);
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,40 @@
+package errorHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The similar-name check: the spellings each variable has been assigned under, compared
+// without regard to case. IncrementalCompiler subclasses it to record the assignments of
+// each statement, and its NameIndex does the same check across the statements.
+public class SimilarNames {
+    private final Map<String, Object> spellings = new HashMap<>();    // a String, or a List once there are several
+
+    // Record an assignment to name at offset and return the earlier spellings that differ
+    // from it only in case.
+    @SuppressWarnings("unchecked")
+    public List<String> assigned(String name, long offset) {
+        String key = name.toLowerCase();
+        Object seen = spellings.get(key);
+        if (seen == null) {
+            spellings.put(key, name);
+            return List.of();
+        }
+        if (seen instanceof String) {
+            if (seen.equals(name)) return List.of();
+            List<String> both = new ArrayList<>(2);
+            both.add((String) seen);
+            both.add(name);
+            spellings.put(key, both);
+            return List.of((String) seen);
+        }
+        List<String> all = (List<String>) seen;
+        List<String> clashes = new ArrayList<>(all.size());
+        for (String spelling : all) {
+            if (!spelling.equals(name)) clashes.add(spelling);
+        }
+        if (clashes.size() == all.size()) all.add(name);
+        return clashes;
+    }
+}
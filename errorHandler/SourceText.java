@@ -0,0 +1,107 @@
+package errorHandler;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+// The characters of a source as the checks see them: the text of the tokens they report
+// and the line breaks before each diagnostic.
+// Lines are counted on demand from the last position asked for, so a source without
+// diagnostics is never read twice; positions must be asked for in increasing order.
+public abstract class SourceText {
+    private long counted;       // the line breaks before this offset are counted
+    private int line = 1;
+    private long lineStart;
+
+    public static SourceText of(CharSequence source) {
+        return new SourceText() {
+            @Override
+            char charAt(long offset) {
+                return source.charAt((int) offset);
+            }
+        };
+    }
+
+    abstract char charAt(long offset);
+
+    // Nothing before offset will be asked for again.
+    void release(long offset) {
+    }
+
+    String text(long from, long to) {
+        StringBuilder sb = new StringBuilder((int) (to - from));
+        for (long i = from; i < to; i++) sb.append(charAt(i));
+        return sb.toString();
+    }
+
+    public int line(long offset) {
+        count(offset);
+        return line;
+    }
+
+    public int column(long offset) {
+        count(offset);
+        return (int) (offset - lineStart) + 1;
+    }
+
+    void count(long offset) {
+        for (; counted < offset; counted++) {
+            if (charAt(counted) == '\n') {
+                line++;
+                lineStart = counted + 1;
+            }
+        }
+    }
+
+    // A source read through a Reader. It keeps the characters read since the last
+    // release(), which for a token scanner stays within its buffer and lookahead.
+    static final class Window extends SourceText {
+        private char[] kept = new char[8192];
+        private long keptStart;     // offset of kept[0]
+        private int keptLength;
+
+        // The reader to scan: everything it hands out is also kept here.
+        Reader wrap(Reader in) {
+            return new FilterReader(in) {
+                @Override
+                public int read() throws IOException {
+                    char[] one = new char[1];
+                    return read(one, 0, 1) < 0 ? -1 : one[0];
+                }
+
+                @Override
+                public int read(char[] buf, int off, int len) throws IOException {
+                    int n = super.read(buf, off, len);
+                    if (n > 0) keep(buf, off, n);
+                    return n;
+                }
+            };
+        }
+
+        private void keep(char[] buf, int off, int n) {
+            if (keptLength + n > kept.length) {
+                kept = Arrays.copyOf(kept, Math.max(kept.length * 2, keptLength + n));
+            }
+            System.arraycopy(buf, off, kept, keptLength, n);
+            keptLength += n;
+        }
+
+        @Override
+        char charAt(long offset) {
+            return kept[(int) (offset - keptStart)];
+        }
+
+        @Override
+        void release(long offset) {
+            count(offset);
+            int drop = (int) (offset - keptStart);
+            // Compact once half the buffer is dead rather than on every token.
+            if (drop > kept.length / 2) {
+                System.arraycopy(kept, drop, kept, 0, keptLength - drop);
+                keptLength -= drop;
+                keptStart = offset;
+            }
+        }
+    }
+}
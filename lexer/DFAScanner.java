@@ -0,0 +1,201 @@
+package lexer;
+
+import dfa.Automaton;
+import dfa.CompiledDFA;
+import metrics.Metrics;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Maximal-munch tokenizer driven by a token DFA (compiled up front or built lazily).
+// At each position the scanner runs the DFA as far as it stays alive and emits the
+// longest accepted prefix together with its token type. Characters that start no token
+// (whitespace, stray symbols) are skipped, like the gaps between Matcher.find() hits.
+// Tokens are reported as (type, start, end) offsets, so no substrings are allocated.
+// Over a CompiledDFA the scan loops take the shortcuts in FastPaths: runs of characters
+// that start no token, and runs a state loops on (inside names, numbers and comments),
+// are measured without stepping the DFA. With -Dlexer.codegen=true the lexer's scanner
+// instead runs a class generated for its DFA (see ScannerGenerator), and falls back to
+// the tables if one cannot be generated.
+// A scanner is safe to share between threads when its automaton is: a CompiledDFA is, a
+// LazyDFA is not.
+public class DFAScanner {
+
+    // Receives each token as it is scanned; end is exclusive.
+    public interface TokenSink {
+        void token(int type, int start, int end);
+    }
+
+    public static final String CODEGEN = "lexer.codegen";
+
+    private final Automaton dfa;
+    private final FastPaths fast;   // null when stepping every character
+    private final ScannerGenerator.Kernel kernel;   // generated scan loops, or null to interpret the tables
+
+    public DFAScanner(Automaton dfa) {
+        this(dfa, true);
+    }
+
+    // fastPaths false steps the DFA through every character, as the benchmarks' baseline.
+    public DFAScanner(Automaton dfa, boolean fastPaths) {
+        this(dfa, fastPaths, null);
+    }
+
+    private DFAScanner(Automaton dfa, boolean fastPaths, ScannerGenerator.Kernel kernel) {
+        this.dfa = dfa;
+        this.fast = fastPaths && dfa instanceof CompiledDFA ? FastPaths.of((CompiledDFA) dfa) : null;
+        this.kernel = kernel;
+    }
+
+    // A scanner running code generated for dfa, or one interpreting its tables if dfa is
+    // not a CompiledDFA or the code cannot be generated.
+    public static DFAScanner generated(Automaton dfa) {
+        ScannerGenerator.Kernel kernel = dfa instanceof CompiledDFA ? ScannerGenerator.generate((CompiledDFA) dfa) : null;
+        return new DFAScanner(dfa, true, kernel);
+    }
+
+    public boolean isGenerated() {
+        return kernel != null;
+    }
+
+    // The scanner for the lexer's token set, built (or loaded, see ScannerTables) once
+    // on first use.
+    public static DFAScanner forLexer() {
+        return LexerScanner.INSTANCE;
+    }
+
+    private static class LexerScanner {
+        static final DFAScanner INSTANCE = Boolean.getBoolean(CODEGEN)
+                ? generated(ScannerTables.scannerDFA())
+                : new DFAScanner(ScannerTables.scannerDFA());
+    }
+
+    public Automaton dfa() {
+        return dfa;
+    }
+
+    // Scan the whole input, reporting every token to the sink in order.
+    public void scan(CharSequence input, TokenSink sink) {
+        scan(input, 0, input.length(), sink);
+    }
+
+    // Scan input[from, to), reporting every token to the sink in order.
+    public void scan(CharSequence input, int from, int to, TokenSink sink) {
+        scan(input, from, to, to, sink);
+    }
+
+    // Scan the tokens that start in input[from, stop), letting the last one run on up to
+    // limit. Returns the position where scanning stopped, which is past stop if a token
+    // straddles it.
+    // The DFA loop of match() is inlined so transitions are counted once per call.
+    public int scan(CharSequence input, int from, int stop, int limit, TokenSink sink) {
+        if (kernel != null) return kernel.scan(input, from, stop, limit, sink);
+        Automaton dfa = this.dfa;
+        FastPaths fast = this.fast;
+        long transitions = 0;
+        int pos = from;
+        while (pos < stop) {
+            if (fast != null) {
+                int next = fast.skip(input, pos, stop);
+                transitions += next - pos;
+                pos = next;
+                if (pos == stop) break;
+            }
+            int state = dfa.start();
+            int lastEnd = -1;
+            int lastType = -1;
+            int i = pos;
+            for (; i < limit; i++) {
+                state = dfa.step(state, input.charAt(i));
+                if (state == Automaton.DEAD) break;
+                if (fast != null && fast.loops(state)) {
+                    i = fast.run(state, input, i + 1, limit) - 1;
+                }
+                int type = dfa.acceptType(state);
+                if (type >= 0) {
+                    lastEnd = i + 1;
+                    lastType = type;
+                }
+            }
+            transitions += Math.min(i + 1, limit) - pos;
+            if (lastEnd < 0) {
+                pos++;
+                continue;
+            }
+            sink.token(lastType, pos, lastEnd);
+            pos = lastEnd;
+        }
+        Metrics.transitions(transitions);
+        return pos;
+    }
+
+    // Find the longest token starting at pos, reading no further than limit.
+    // Returns (type << 32) | end, or -1 if no token starts at pos.
+    public long match(CharSequence input, int pos, int limit) {
+        Automaton dfa = this.dfa;
+        int state = dfa.start();
+        int lastEnd = -1;
+        int lastType = -1;
+        int i = pos;
+        for (; i < limit; i++) {
+            state = dfa.step(state, input.charAt(i));
+            if (state == Automaton.DEAD) break;
+            int type = dfa.acceptType(state);
+            if (type >= 0) {
+                lastEnd = i + 1;
+                lastType = type;
+            }
+        }
+        Metrics.transitions(Math.min(i + 1, limit) - pos);
+        return lastEnd < 0 ? -1 : ((long) lastType << 32) | lastEnd;
+    }
+
+    // Scan bytes input[from, to) of an ASCII-compatible encoding, reporting byte offsets.
+    // Bytes of multi-byte characters end a token, except where every non-ASCII character
+    // would continue it (inside comments), so they run on as the characters would.
+    public void scan(ByteBuffer input, int from, int to, TokenSink sink) {
+        if (kernel != null) {
+            kernel.scan(input, from, to, sink);
+            return;
+        }
+        Automaton dfa = this.dfa;
+        FastPaths fast = this.fast;
+        if (fast != null && input.order() != ByteOrder.BIG_ENDIAN) {
+            input = input.duplicate().order(ByteOrder.BIG_ENDIAN);
+        }
+        long transitions = 0;
+        int pos = from;
+        while (pos < to) {
+            if (fast != null) {
+                int next = fast.skip(input, pos, to);
+                transitions += next - pos;
+                pos = next;
+                if (pos == to) break;
+            }
+            int state = dfa.start();
+            int lastEnd = -1;
+            int lastType = -1;
+            int i = pos;
+            for (; i < to; i++) {
+                state = dfa.stepByte(state, input.get(i) & 0xFF);
+                if (state == Automaton.DEAD) break;
+                if (fast != null && fast.loops(state)) {
+                    i = fast.run(state, input, i + 1, to) - 1;
+                }
+                int type = dfa.acceptType(state);
+                if (type >= 0) {
+                    lastEnd = i + 1;
+                    lastType = type;
+                }
+            }
+            transitions += Math.min(i + 1, to) - pos;
+            if (lastEnd < 0) {
+                pos++;
+                continue;
+            }
+            sink.token(lastType, pos, lastEnd);
+            pos = lastEnd;
+        }
+        Metrics.transitions(transitions);
+    }
+}
@@ -0,0 +1,219 @@
+package lexer;
+
+import dfa.CompiledDFA;
+
+import java.nio.ByteBuffer;
+
+// Shortcuts for the stretches where DFAScanner would step the DFA through many characters
+// without anything changing: whitespace between tokens, and the inside of identifiers,
+// numbers and comments.
+// A character that takes no transition from the start state starts no token, so a run of
+// them can be skipped without running the DFA. And a state that loops back to itself on a
+// set of characters stays in that state, accepting or not, until a character outside the
+// set comes along, so the whole run can be measured without stepping. The loop sets the
+// token grammar produces ([a-z], [a-zA-Z], [0-9], and everything but one character in
+// comments, non-ASCII included) are measured eight bytes at a time on byte input, with SWAR arithmetic on
+// longs; on char input they are a tight compare loop with no table lookups. The DFA is
+// only stepped where a run ends, at token boundaries.
+final class FastPaths {
+    private static final int NONE = 0;
+    private static final int LOWER = 1;         // [a-z]
+    private static final int LETTER = 2;        // [a-zA-Z]
+    private static final int DIGIT = 3;         // [0-9]
+    private static final int ASCII_BUT = 4;     // any ASCII character but one
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH = 0x8080808080808080L;
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    private final byte[] kinds;         // loop kind of each state
+    private final char[] excluded;      // the one character an ASCII_BUT state stops at
+    private final boolean[] wide;       // an ASCII_BUT state also loops on all non-ASCII
+    private final boolean[] dead;       // no transition from the start state, below 128
+    private final boolean highDead;     // nor on a byte of 0x80 and above
+    private final boolean swarSkip;     // dead[] holds all of space, tab, CR and LF
+
+    private FastPaths(int states, boolean[] dead, boolean highDead) {
+        this.kinds = new byte[states];
+        this.excluded = new char[states];
+        this.wide = new boolean[states];
+        this.dead = dead;
+        this.highDead = highDead;
+        this.swarSkip = dead[' '] && dead['\t'] && dead['\n'] && dead['\r'];
+    }
+
+    static FastPaths of(CompiledDFA dfa) {
+        boolean[] dead = new boolean[128];
+        for (int c = 0; c < 128; c++) {
+            dead[c] = dfa.step(dfa.start(), (char) c) == CompiledDFA.DEAD;
+        }
+        FastPaths fast = new FastPaths(dfa.stateCount(), dead,
+                dfa.stepByte(dfa.start(), 0x80) == CompiledDFA.DEAD);
+        boolean[] loops = new boolean[128];
+        for (int s = 0; s < dfa.stateCount(); s++) {
+            int count = 0;
+            int missing = -1;
+            for (int c = 0; c < 128; c++) {
+                loops[c] = dfa.step(s, (char) c) == s;
+                if (loops[c]) count++;
+                else missing = c;
+            }
+            if (count == 127) {
+                fast.kinds[s] = ASCII_BUT;
+                fast.excluded[s] = (char) missing;
+                fast.wide[s] = dfa.stepByte(s, 0x80) == s;
+            } else if (isExactly(loops, count, 'a', 'z', 'a', 'z')) {
+                fast.kinds[s] = LOWER;
+            } else if (isExactly(loops, count, 'a', 'z', 'A', 'Z')) {
+                fast.kinds[s] = LETTER;
+            } else if (isExactly(loops, count, '0', '9', '0', '9')) {
+                fast.kinds[s] = DIGIT;
+            }
+        }
+        return fast;
+    }
+
+    // Whether the set holds exactly the characters of two (possibly equal) ranges.
+    private static boolean isExactly(boolean[] set, int count, char lo1, char hi1, char lo2, char hi2) {
+        int expected = hi1 - lo1 + 1 + (lo2 == lo1 ? 0 : hi2 - lo2 + 1);
+        if (count != expected) return false;
+        for (char c = lo1; c <= hi1; c++) if (!set[c]) return false;
+        for (char c = lo2; c <= hi2; c++) if (!set[c]) return false;
+        return true;
+    }
+
+    // Whether the state loops on a run the methods below can measure.
+    boolean loops(int state) {
+        return kinds[state] != NONE;
+    }
+
+    // The first position in [from, limit) that could start a token. Only ASCII characters
+    // are skipped; anything else is left to the DFA.
+    int skip(CharSequence input, int from, int limit) {
+        int i = from;
+        while (i < limit) {
+            char c = input.charAt(i);
+            if (c >= 128 || !dead[c]) break;
+            i++;
+        }
+        return i;
+    }
+
+    // The end of the run of characters that state loops on, starting at from.
+    int run(int state, CharSequence input, int from, int limit) {
+        int i = from;
+        switch (kinds[state]) {
+            case LOWER:
+                while (i < limit && isLower(input.charAt(i))) i++;
+                return i;
+            case LETTER:
+                while (i < limit && isLower((char) (input.charAt(i) | 0x20))) i++;
+                return i;
+            case DIGIT:
+                while (i < limit && isDigit(input.charAt(i))) i++;
+                return i;
+            case ASCII_BUT:
+                char stop = excluded[state];
+                char end = wide[state] ? Character.MAX_VALUE : 127;
+                while (i < limit) {
+                    char c = input.charAt(i);
+                    if (c > end || c == stop) break;
+                    i++;
+                }
+                return i;
+            default:
+                return from;
+        }
+    }
+
+    // As above, on bytes. The buffer must be big-endian, so the first byte of a word is
+    // its most significant.
+    int skip(ByteBuffer input, int from, int limit) {
+        int i = from;
+        while (i < limit) {
+            if (swarSkip) {
+                for (; i + 8 <= limit; i += 8) {
+                    long x = input.getLong(i);
+                    long stop = ~(equal(x, ' ') | equal(x, '\t') | equal(x, '\n') | equal(x, '\r')) & HIGH;
+                    if (stop != 0) {
+                        i += Long.numberOfLeadingZeros(stop) >>> 3;
+                        break;
+                    }
+                }
+            }
+            if (i == limit) break;
+            int b = input.get(i) & 0xFF;
+            if (b < 128 ? !dead[b] : !highDead) break;
+            i++;
+        }
+        return i;
+    }
+
+    int run(int state, ByteBuffer input, int from, int limit) {
+        switch (kinds[state]) {
+            case LOWER:
+                return runInRange(input, from, limit, 0, 'a', 'z');
+            case LETTER:
+                return runInRange(input, from, limit, 0x20, 'a', 'z');
+            case DIGIT:
+                return runInRange(input, from, limit, 0, '0', '9');
+            case ASCII_BUT:
+                return runAsciiBut(input, from, limit, excluded[state], wide[state]);
+            default:
+                return from;
+        }
+    }
+
+    // The end of a run of bytes in [lo, hi] once or'ed with fold (0x20 folds case).
+    private static int runInRange(ByteBuffer input, int i, int limit, int fold, int lo, int hi) {
+        long folds = ONES * fold;
+        for (; i + 8 <= limit; i += 8) {
+            long stop = ~inRange(input.getLong(i) | folds, lo, hi) & HIGH;
+            if (stop != 0) return i + (Long.numberOfLeadingZeros(stop) >>> 3);
+        }
+        for (; i < limit; i++) {
+            int b = (input.get(i) & 0xFF) | fold;
+            if (b < lo || b > hi) break;
+        }
+        return i;
+    }
+
+    // The end of a run of bytes other than c, ASCII only unless wide.
+    private static int runAsciiBut(ByteBuffer input, int i, int limit, int c, boolean wide) {
+        long high = wide ? 0 : HIGH;
+        int end = wide ? 255 : 127;
+        for (; i + 8 <= limit; i += 8) {
+            long x = input.getLong(i);
+            long stop = ((x & high) | equal(x, c)) & HIGH;
+            if (stop != 0) return i + (Long.numberOfLeadingZeros(stop) >>> 3);
+        }
+        for (; i < limit; i++) {
+            int b = input.get(i) & 0xFF;
+            if (b > end || b == c) break;
+        }
+        return i;
+    }
+
+    private static boolean isLower(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // 0x80 in each byte of x that is in [lo, hi], 0 in the others (lo >= 1, hi <= 127).
+    // The high bits are cleared first so no addition carries into the next byte.
+    private static long inRange(long x, int lo, int hi) {
+        long low = x & LOW7;
+        long atLeastLo = low + ONES * (0x80 - lo);
+        long aboveHi = low + ONES * (0x7F - hi);
+        return atLeastLo & ~aboveHi & ~x & HIGH;
+    }
+
+    // 0x80 in each byte of x that equals c, 0 in the others.
+    private static long equal(long x, int c) {
+        long y = x ^ (ONES * c);
+        return ~(((y & LOW7) + LOW7) | y | LOW7);
+    }
+}
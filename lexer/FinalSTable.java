@@ -1,92 +1,344 @@
 package lexer;
 import java.util.*;
-import errorHandler.ErrorHandler;
+import metrics.Metrics;
+import metrics.PhaseEvent;
 
+// Builds the symbol table from typed tokens pushed in one at a time.
+// Each token is handled once the two tokens after it have arrived (comments do not
+// count), so the builder holds at most three tokens whatever the length of the source,
+// and can sit at the end of a scanner pipeline (see sink()). Roles come from the token
+// type id: names are IDENTIFIER and UPPERCASE_IDENTIFIER tokens (String and Scanner are
+// the latter), operators OPERATOR and ASSIGNMENT tokens, and the data types and library
+// names are names interned once up front.
 public class FinalSTable {
-    private SymbolTable symbolTable = new SymbolTable();
-    private Stack<String> scopeStack = new Stack<>();
-    private String currentScope = "Global";
-    private ErrorHandler errorHandler = new ErrorHandler();
-    private int lineNumber = 1;
-    private List<String> keywords = Arrays.asList("if", "else", "while", "for", "return");
+    private static final int IDENTIFIER = TokenType.IDENTIFIER.ordinal();
+    private static final int UPPERCASE_IDENTIFIER = TokenType.UPPERCASE_IDENTIFIER.ordinal();
+    private static final int OPERATOR = TokenType.OPERATOR.ordinal();
+    private static final int ASSIGNMENT = TokenType.ASSIGNMENT.ordinal();
+    private static final int COMMENT = TokenType.COMMENT.ordinal();
+    private static final int DELIMITER = TokenType.DELIMITER.ordinal();
+    private static final int WINDOW = 3;    // the token being handled and two of lookahead
 
-    public void processTokens(List<String> tokens) {
-        String currentType = null;
-        String scope = "Global"; 
+    private final NamePool pool;
+    private final SymbolTable symbolTable;
+    private final int intId;
+    private final int floatId;
+    private final int charId;
+    private final int stringId;
+    private final int scannerId;
+    private final int finalId;
+    private String currentType;     // declared type waiting for its identifier
+    private ArrayDeque<Integer> scopeDepths = new ArrayDeque<>(); // brace depth each open scope began at
+    private int braceDepth = 0;
+    private int pendingScopes = 0;  // function scopes whose body has not started yet
 
-        for (int i = 0; i < tokens.size(); i++) {
-            String token = tokens.get(i).trim();
+    // The tokens not handled yet, oldest first from head, as a ring. A token's text is
+    // text[start, end); id is its interned name if the caller already knows it, else -1.
+    private final int[] types = new int[WINDOW];
+    private final CharSequence[] texts = new CharSequence[WINDOW];
+    private final int[] starts = new int[WINDOW];
+    private final int[] ends = new int[WINDOW];
+    private final int[] ids = new int[WINDOW];
+    private int head;
+    private int count;
 
-            if (token.isEmpty()) continue;
+    public FinalSTable() {
+        this(new SymbolTable());
+    }
 
-            if (token.startsWith("//")) {
-                break; 
-            }
-            if (token.startsWith("/*")) {
-                while (i < tokens.size() && !tokens.get(i).endsWith("*/")) {
-                   i++;
-                }
-                continue;
-            }
+    // Collect symbols into the given table; IncrementalCompiler passes a SymbolLog.
+    FinalSTable(SymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+        this.pool = symbolTable.pool();
+        this.intId = pool.intern("int");
+        this.floatId = pool.intern("float");
+        this.charId = pool.intern("char");
+        this.stringId = pool.intern("String");
+        this.scannerId = pool.intern("Scanner");
+        this.finalId = pool.intern("final");
+    }
 
-            if (token.equals("System.out.print") || token.equals("System.out.println")) {
-                symbolTable.addSymbol(token, "Output", "N/A", scope);
-            }
-            if (token.equals("Scanner")) {
-                symbolTable.addSymbol(token, "Input", "N/A", scope);
-            }
+    // Process lexemes whose types are not known, typing each one with the lexer's scanner.
+    // A lexeme that is not exactly one token gets no type.
+    public void processTokens(List<String> tokens) {
+        processTokens(tokens.iterator());
+    }
 
-            if (tokens.size() > i + 1 && tokens.get(i + 1).equals("(")) {
-                symbolTable.addSymbol(token, "Function", "N/A", scope);
-                scope = "Local"; // Function introduces a new scope
-                continue;
-            }
-            if (isDataType(token)) {
-                currentType = token;
+    public void processTokens(Iterator<String> source) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.PROCESS_TOKENS);
+        DFAScanner scanner = DFAScanner.forLexer();
+        int tokens = 0;
+        while (source.hasNext()) {
+            String lexeme = source.next();
+            long match = scanner.match(lexeme, 0, lexeme.length());
+            int type = match >= 0 && (int) match == lexeme.length() ? (int) (match >>> 32) : -1;
+            token(type, lexeme, 0, lexeme.length());
+            tokens++;
+        }
+        end();
+        Metrics.end(phase, tokens);
+    }
+
+    // Consume tokens straight from a streaming lexer.
+    public void processTokens(TokenStream stream) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.PROCESS_TOKENS);
+        int tokens = 0;
+        while (stream.next()) {
+            if (stream.type() != COMMENT) {
+                String text = stream.text();
+                token(stream.type(), text, 0, text.length());
             }
-            else if (currentType != null && isIdentifier(token)) {
-                String value = "undefined";
+            tokens++;
+        }
+        end();
+        Metrics.end(phase, tokens);
+    }
 
-                if (i + 2 < tokens.size() && tokens.get(i + 1).equals("=")) {
-                    value = tokens.get(i + 2); 
-                    i += 2; 
-                }
+    public void processTokens(TokenBuffer tokens) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.PROCESS_TOKENS);
+        for (int i = 0, n = tokens.size(); i < n; i++) {
+            push(tokens, i);
+        }
+        end();
+        Metrics.end(phase, tokens.size());
+    }
 
-                symbolTable.addSymbol(token, currentType, value, scope);
-                currentType = null; 
-                continue;
+    // A scanner sink that feeds the tokens of source to this builder. Call end() once the
+    // scan is done.
+    public DFAScanner.TokenSink sink(CharSequence source) {
+        return (type, start, end) -> token(type, source, start, end);
+    }
+
+    // Take the next token, text[start, end) of the given type.
+    public void token(int type, CharSequence text, int start, int end) {
+        add(type, text, start, end, -1);
+    }
+
+    // Take token i of a token list, reusing its interned name when the list shares our pool.
+    void push(TokenList tokens, int i) {
+        int id = tokens.pool() == pool ? tokens.symbol(i) : -1;
+        add(tokens.type(i), tokens.source(), tokens.start(i), tokens.end(i), id);
+    }
+
+    // Handle the tokens still waiting for lookahead: the input has ended.
+    public void end() {
+        while (count > 0) handle();
+        currentType = null;
+    }
+
+    private void add(int type, CharSequence text, int start, int end, int id) {
+        if (type == COMMENT) return;
+        int slot = slot(count);
+        types[slot] = type;
+        texts[slot] = text;
+        starts[slot] = start;
+        ends[slot] = end;
+        ids[slot] = id;
+        if (++count == WINDOW) handle();
+    }
+
+    // Handle the oldest waiting token, with the ones after it as lookahead, and drop it
+    // together with any lookahead it used up.
+    private void handle() {
+        int type = type(0);
+        if (type == DELIMITER) {
+            trackScope(firstChar(0));
+        }
+        String scope = symbolTable.currentScope();
+        boolean hasNext = count > 1;
+        boolean hasAfter = count > 2;
+        boolean name = type == IDENTIFIER || type == UPPERCASE_IDENTIFIER;    // ErrorHandler reports the latter
+        int id = name ? nameId(0) : -1;
+
+        // Input and output are listed as well as handled like any other name. The scanner
+        // splits System.out.print up, so only a lexeme passed to processTokens is whole.
+        if (id == scannerId) {
+            symbolTable.addSymbol(id, "Input", "N/A", scope);
+        } else if (type < 0 && isOutput(lexeme(0))) {
+            symbolTable.addSymbol(nameId(0), "Output", "N/A", scope);
+        }
+        if (hasNext && type(1) == DELIMITER && firstChar(1) == '(') {
+            symbolTable.addSymbol(nameId(0), "Function", "N/A", scope);
+            enterFunction(); // Function introduces a new scope
+            drop(1);
+            return;
+        }
+        if (id == intId || id == floatId || id == charId || id == stringId) {
+            currentType = pool.name(id);
+            drop(1);
+        }
+        else if (currentType != null && name) {
+            if (hasAfter && type(1) == ASSIGNMENT) {
+                symbolTable.addSymbol(id, currentType, lexeme(2), scope);
+                drop(3);
+            } else {
+                symbolTable.addSymbol(id, currentType, "undefined", scope);
+                drop(1);
             }
-            else if (isIdentifier(token) && i + 1 < tokens.size() && tokens.get(i + 1).equals("=")) {
-                String value = (i + 2 < tokens.size()) ? tokens.get(i + 2) : "undefined";
-                
-                if (symbolTable.hasSymbol(token)) {
-                    symbolTable.updateValue(token, value);
-                } else {
-                    symbolTable.addSymbol(token, "Unknown", value, scope);
-                }
-                i += 2;
+            currentType = null;
+        }
+        else if (name && hasNext && type(1) == ASSIGNMENT) {
+            symbolTable.assign(id, hasAfter ? lexeme(2) : "undefined", scope);
+            drop(hasAfter ? 3 : 2);
+        }
+        else if (id == finalId && hasAfter) {
+            symbolTable.addSymbol(nameId(2), "Constant", "N/A", scope);
+            drop(3);
+        }
+        else {
+            if (type == OPERATOR || type == ASSIGNMENT) {
+                symbolTable.addSymbol(nameId(0), "Operator", "N/A", scope);
             }
+            drop(1);
+        }
+    }
+
+    private static boolean isOutput(String lexeme) {
+        return lexeme.equals("System.out.print") || lexeme.equals("System.out.println");
+    }
+
+    // The k-th waiting token.
+    private int type(int k) {
+        return types[slot(k)];
+    }
+
+    private char firstChar(int k) {
+        int slot = slot(k);
+        return texts[slot].charAt(starts[slot]);
+    }
+
+    private String lexeme(int k) {
+        int slot = slot(k);
+        return texts[slot].subSequence(starts[slot], ends[slot]).toString();
+    }
+
+    private int nameId(int k) {
+        int slot = slot(k);
+        return ids[slot] >= 0 ? ids[slot] : pool.intern(texts[slot], starts[slot], ends[slot]);
+    }
+
+    private int slot(int k) {
+        int slot = head + k;
+        return slot < WINDOW ? slot : slot - WINDOW;
+    }
 
-            else if (token.equals("final") && i + 2 < tokens.size()) {
-                String constName = tokens.get(i + 2);
-                symbolTable.addSymbol(constName, "Constant", "N/A", scope);
-                i += 2;
+    private void drop(int n) {
+        for (int k = 0; k < n; k++) {
+            texts[slot(k)] = null;
+        }
+        head = slot(n);
+        count -= n;
+    }
+
+    // Everything the builder carries from one token to the next apart from the symbols,
+    // including the tokens still waiting for lookahead. Only how deep the open scopes
+    // began below the current brace depth matters, so that is what is kept: the state
+    // after an unmatched brace outside any function is the same as before it.
+    State state() {
+        int[] depths = new int[scopeDepths.size()];
+        int k = 0;
+        for (int depth : scopeDepths) depths[k++] = depth - braceDepth;
+        int[] waiting = new int[count];
+        String[] lexemes = new String[count];
+        for (k = 0; k < count; k++) {
+            waiting[k] = type(k);
+            lexemes[k] = lexeme(k);
+        }
+        return new State(depths, pendingScopes, currentType, waiting, lexemes);
+    }
+
+    void restore(State state) {
+        scopeDepths.clear();
+        for (int depth : state.scopeDepths) scopeDepths.addLast(depth);
+        braceDepth = 0;
+        pendingScopes = state.pendingScopes;
+        currentType = state.currentType;
+        drop(count);
+        for (int k = 0; k < state.waiting.length; k++) {
+            String lexeme = state.lexemes[k];
+            add(state.waiting[k], lexeme, 0, lexeme.length(), -1);
+        }
+    }
+
+    static final class State {
+        private final int[] scopeDepths;    // relative to the brace depth
+        private final int pendingScopes;
+        private final String currentType;
+        private final int[] waiting;        // types and text of the tokens not handled yet
+        private final String[] lexemes;
+
+        State(int[] scopeDepths, int pendingScopes, String currentType, int[] waiting, String[] lexemes) {
+            this.scopeDepths = scopeDepths;
+            this.pendingScopes = pendingScopes;
+            this.currentType = currentType;
+            this.waiting = waiting;
+            this.lexemes = lexemes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof State)) return false;
+            State other = (State) o;
+            return pendingScopes == other.pendingScopes
+                    && Objects.equals(currentType, other.currentType)
+                    && Arrays.equals(scopeDepths, other.scopeDepths)
+                    && Arrays.equals(waiting, other.waiting)
+                    && Arrays.equals(lexemes, other.lexemes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pendingScopes, currentType, Arrays.hashCode(scopeDepths),
+                    Arrays.hashCode(waiting), Arrays.hashCode(lexemes));
+        }
+    }
+
+    // Open a Local scope for a function. It lasts until the end of the function's body,
+    // or until the end of the statement if no body follows (a call).
+    private void enterFunction() {
+        symbolTable.enterScope("Local");
+        scopeDepths.push(braceDepth);
+        pendingScopes++;
+    }
+
+    // Follow the braces and semicolons that open and close function scopes.
+    private void trackScope(char c) {
+        if (c == '{') {
+            // The outermost pending function owns this body; any calls inside its
+            // header are finished.
+            while (pendingScopes > 1) {
+                exitScope();
+                pendingScopes--;
             }
-            else if (isOperator(token)) {
-                symbolTable.addSymbol(token, "Operator", "N/A", scope);
+            pendingScopes = 0;
+            braceDepth++;
+        } else if (c == '}') {
+            braceDepth--;
+            while (!scopeDepths.isEmpty() && scopeDepths.peek() >= braceDepth) {
+                exitScope();
+            }
+            pendingScopes = 0;
+        } else if (c == ';') {
+            while (pendingScopes > 0) {
+                exitScope();
+                pendingScopes--;
             }
         }
     }
-    private boolean isDataType(String token) {
-        return token.equals("int") || token.equals("float") || token.equals("char") || token.equals("String");
+
+    private void exitScope() {
+        symbolTable.exitScope();
+        scopeDepths.pop();
     }
 
-    private boolean isIdentifier(String token) {
-        return token.matches("[a-zA-Z_][a-zA-Z0-9_]*");
+    // The pool that symbol names are interned into; pass it to Lexer.tokenizeToBuffer
+    // so identifier ids are assigned once, during scanning.
+    public NamePool pool() {
+        return pool;
     }
 
-    private boolean isOperator(String token) {
-        return "+-*/%^=".contains(token);
+    public SymbolTable symbolTable() {
+        return symbolTable;
     }
 
     public void displaySymbolTable() {
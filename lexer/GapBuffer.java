@@ -0,0 +1,82 @@
+package lexer;
+
+import java.util.Arrays;
+
+// Editable text with a gap at the last edit position.
+// Replacing text moves the gap to the edit and fills or widens it there, so a run of
+// edits close together costs time proportional to the distance between them and the
+// text inserted, however long the text is.
+public class GapBuffer implements CharSequence {
+    private char[] buf;
+    private int gapStart;
+    private int gapEnd;
+
+    public GapBuffer(CharSequence text) {
+        int length = text.length();
+        buf = new char[Math.max(16, length + length / 8)];
+        for (int i = 0; i < length; i++) buf[i] = text.charAt(i);
+        gapStart = length;
+        gapEnd = buf.length;
+    }
+
+    @Override
+    public int length() {
+        return buf.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buf[index < gapStart ? index : index + (gapEnd - gapStart)];
+    }
+
+    // Replace text[offset, offset + removed) with inserted.
+    public void replace(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length()) {
+            throw new IndexOutOfBoundsException("replace " + offset + "+" + removed + " in " + length());
+        }
+        moveGap(offset);
+        gapEnd += removed;
+        int n = inserted.length();
+        if (gapEnd - gapStart < n) grow(n);
+        for (int i = 0; i < n; i++) buf[gapStart++] = inserted.charAt(i);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException("subSequence " + start + ".." + end + " of " + length());
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) sb.append(charAt(i));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(length()).append(buf, 0, gapStart)
+                .append(buf, gapEnd, buf.length - gapEnd).toString();
+    }
+
+    private void moveGap(int pos) {
+        if (pos < gapStart) {
+            int n = gapStart - pos;
+            System.arraycopy(buf, pos, buf, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (pos > gapStart) {
+            int n = pos - gapStart;
+            System.arraycopy(buf, gapEnd, buf, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    private void grow(int needed) {
+        int tail = buf.length - gapEnd;
+        int capacity = Math.max(buf.length * 2, length() + needed + 16);
+        char[] bigger = Arrays.copyOf(buf, capacity);
+        System.arraycopy(buf, gapEnd, bigger, capacity - tail, tail);
+        buf = bigger;
+        gapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,89 @@
+package lexer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+// A list kept sorted by a comparator, stored as a gap buffer with the gap at the last
+// insertion or removal, so changes close together cost time in proportion to the distance
+// between them. The items must keep their order under the comparator for as long as they
+// are in the list; IncrementalCompiler's items are ordered by where they are in the source.
+final class GapList<T> {
+    private final Comparator<? super T> order;
+    private Object[] items = new Object[4];
+    private int gapStart;
+    private int gapEnd = 4;
+
+    GapList(Comparator<? super T> order) {
+        this.order = order;
+    }
+
+    int size() {
+        return items.length - (gapEnd - gapStart);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int i) {
+        return (T) items[i < gapStart ? i : i + (gapEnd - gapStart)];
+    }
+
+    // Number of items that come before key.
+    int rank(T key) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (order.compare(get(mid), key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // The last item that comes before key, or null.
+    T before(T key) {
+        int i = rank(key);
+        return i == 0 ? null : get(i - 1);
+    }
+
+    void add(T item) {
+        moveGap(rank(item));
+        if (gapStart == gapEnd) grow();
+        items[gapStart++] = item;
+    }
+
+    void remove(T item) {
+        int i = rank(item);
+        if (i == size() || get(i) != item) throw new IllegalStateException("not in the list: " + item);
+        moveGap(i);
+        items[gapEnd++] = null;
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int n = gapStart - index;
+            System.arraycopy(items, index, items, gapEnd - n, n);
+            Arrays.fill(items, index, Math.min(gapStart, gapEnd - n), null);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (index > gapStart) {
+            int n = index - gapStart;
+            System.arraycopy(items, gapEnd, items, gapStart, n);
+            Arrays.fill(items, Math.max(gapEnd, gapStart + n), gapEnd + n, null);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    private void grow() {
+        int tail = items.length - gapEnd;
+        int capacity = items.length * 2;
+        Object[] bigger = Arrays.copyOf(items, capacity);
+        System.arraycopy(items, gapEnd, bigger, capacity - tail, tail);
+        Arrays.fill(bigger, gapEnd, capacity - tail, null);
+        items = bigger;
+        gapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,308 @@
+package lexer;
+
+import errorHandler.Diagnostic;
+import errorHandler.ErrorHandler;
+
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Tokens, diagnostics and symbol table of a source that is being edited, kept up to
+// date by re-analysing only the statements an edit affects.
+// The source is cut into statements (see endsStatement), and a StatementList keeps the
+// cached results for each: the ErrorHandler diagnostics for its tokens (placed relative to
+// its text) and the assignments they make, the symbol-table calls FinalSTable made on the
+// way through it, and a checkpoint of FinalSTable's state just after it, lookahead tokens
+// included. After the lexer has re-scanned an edit, FinalSTable resumes from the checkpoint
+// of the statement before the re-scanned tokens, found by binary search, and stops at the
+// first checkpoint past them where its state matches the cached one again. The statements
+// in between replace the old ones in NameIndex, which does the similar-name check across
+// statements, and in SymbolIndex, which resolves the symbol-table calls and keeps the
+// table. Both only go as far as the edit can make a difference, and the diagnostics are
+// kept in order with each placed relative to its statement, so nothing is assembled from
+// the whole source again. The results are the same as running ErrorHandler and
+// FinalSTable over the whole source.
+public class IncrementalCompiler {
+    private static final int DELIMITER = TokenType.DELIMITER.ordinal();
+    private static final int OPERATOR = TokenType.OPERATOR.ordinal();
+    private static final int ASSIGNMENT = TokenType.ASSIGNMENT.ordinal();
+
+    private final IncrementalLexer lexer;
+    private final SymbolLog log = new SymbolLog();
+    private final FinalSTable analyzer = new FinalSTable(log);
+    private final NameLog assignments = new NameLog();
+    private final Checkpoint initial;
+    private final StatementList statements;
+    private final LineIndex lines;
+    private final NameIndex names;
+    private final SymbolIndex symbols;
+    private final GapList<Placed> reported = new GapList<>(this::compare);
+    private final List<Diagnostic> diagnostics = new AbstractList<Diagnostic>() {
+        @Override
+        public Diagnostic get(int i) {
+            Objects.checkIndex(i, size());
+            Placed p = reported.get(i);
+            long offset = statements.start(p.statement) + p.diagnostic.offset;
+            return p.diagnostic.at(offset, lines.line(offset), lines.column(offset));
+        }
+
+        @Override
+        public int size() {
+            return reported.size();
+        }
+    };
+    private final List<String> errors = new AbstractList<String>() {
+        @Override
+        public String get(int i) {
+            return diagnostics.get(i).message();
+        }
+
+        @Override
+        public int size() {
+            return diagnostics.size();
+        }
+    };
+
+    public IncrementalCompiler(CharSequence source) {
+        this(new IncrementalLexer(source));
+    }
+
+    public IncrementalCompiler(IncrementalLexer lexer) {
+        this.lexer = lexer;
+        this.statements = new StatementList(lexer.source());
+        this.lines = new LineIndex(lexer.source());
+        this.names = new NameIndex(statements);
+        this.symbols = new SymbolIndex(statements, log.pool());
+        this.initial = checkpoint();
+        analyze(0, lexer.size());
+    }
+
+    // Replace source[offset, offset + removed) with inserted.
+    public IncrementalLexer.Change edit(int offset, int removed, CharSequence inserted) {
+        int length = lexer.source().length();
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + " in " + length);
+        }
+        // The first statement that can change holds the first token the lexer will
+        // re-scan. The gaps go there while the offsets are still those of the old text.
+        int first = lexer.restartIndex(offset);
+        int k = statements.find(first == 0 ? 0 : lexer.end(first - 1));
+        statements.moveGap(k);
+        lines.replace(offset, removed, inserted);
+        IncrementalLexer.Change change = lexer.edit(offset, removed, inserted);
+        analyze(k, change.first + change.inserted);
+        return change;
+    }
+
+    public CharSequence source() {
+        return lexer.source();
+    }
+
+    public IncrementalLexer tokens() {
+        return lexer;
+    }
+
+    // The diagnostics ErrorHandler.checkErrors would give for the whole source, as a view
+    // that follows the edits.
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    // The messages ErrorHandler.errors would give for the whole source, likewise.
+    public List<String> errors() {
+        return errors;
+    }
+
+    // The table FinalSTable.processTokens would build for the whole source. It follows
+    // the edits.
+    public SymbolTable symbolTable() {
+        return symbols.table();
+    }
+
+    // Re-run the analysis from statement k, up to token changedEnd the lexer has just
+    // replaced and then until it is back in step with the cached statements.
+    private void analyze(int k, int changedEnd) {
+        StatementList.Statement previous = k == 0 ? null : statements.get(k - 1);
+        int from = previous == null ? 0 : statements.end(previous);
+        Checkpoint resume = previous == null ? initial : previous.checkpoint;
+        analyzer.restore(resume.state);
+        log.restoreScopes(resume.scopes);
+
+        List<StatementList.Statement> added = new ArrayList<>();
+        int n = lexer.size();
+        int textStart = from;
+        int tokenStart = lexer.tokenAt(textStart);
+        for (int i = tokenStart; i < n; i++) {
+            analyzer.push(lexer, i);
+            if (!endsStatement(i)) {
+                // It may have ended one before the edit; that statement is on its way out.
+                if (lexer.attachment(i) != null) lexer.attach(i, null);
+                continue;
+            }
+            Checkpoint checkpoint = checkpoint();
+            StatementList.Statement statement = statement(tokenStart, i + 1, textStart, lexer.end(i), checkpoint);
+            // Past token changedEnd, the cached statements after this one ended where they
+            // do now: endsStatement looks at most two tokens back.
+            StatementList.Statement cached = i > changedEnd ? (StatementList.Statement) lexer.attachment(i) : null;
+            lexer.attach(i, statement);
+            added.add(statement);
+            if (cached != null && cached.checkpoint.equals(checkpoint)) {
+                // Back in step with the cached analysis: everything after this is unchanged.
+                replace(from, added, cached);
+                return;
+            }
+            textStart = lexer.end(i);
+            tokenStart = i + 1;
+        }
+        analyzer.end();
+        added.add(statement(tokenStart, n, textStart, lexer.source().length(), null));
+        replace(from, added, null);
+    }
+
+    // Put the added statements, whose text starts at offset start, in place of the cached
+    // ones from the gap up to and including last, or to the end if last is null.
+    private void replace(int start, List<StatementList.Statement> added, StatementList.Statement last) {
+        for (StatementList.Statement old = statements.next(); old != null; old = statements.next()) {
+            for (Placed p : old.diagnostics) reported.remove(p);
+            for (NameLog.Assignment a : old.assignments) {
+                for (Placed p : a.warnings) reported.remove(p);
+            }
+            symbols.remove(old);
+            names.remove(old);
+            statements.removeNext();
+            if (old == last) break;
+        }
+        for (StatementList.Statement s : added) {
+            statements.insert(s, start);
+            start += s.length;
+            for (Placed p : s.diagnostics) reported.add(p);
+            names.add(s);
+            symbols.add(s);
+        }
+        symbols.settle();
+        names.settle(this::warn);
+    }
+
+    // Report the SIMILAR_NAME warnings about the given spellings for assignment, in place
+    // of those reported before.
+    private void warn(NameLog.Assignment assignment, List<String> spellings) {
+        if (spellings.size() == assignment.warnings.size()) {
+            int i = 0;
+            while (i < spellings.size() && spellings.get(i).equals(assignment.warnings.get(i).diagnostic.other)) i++;
+            if (i == spellings.size()) return;
+        }
+        for (Placed p : assignment.warnings) reported.remove(p);
+        List<Placed> warnings = spellings.isEmpty() ? List.of() : new ArrayList<>(spellings.size());
+        for (int i = 0; i < spellings.size(); i++) {
+            Placed p = new Placed(assignment.statement, new Diagnostic(Diagnostic.Code.SIMILAR_NAME,
+                    assignment.offset, 0, 0, assignment.name, spellings.get(i)), i);
+            reported.add(p);
+            warnings.add(p);
+        }
+        assignment.warnings = warnings;
+    }
+
+    // A statement ends at a ';', '{' or '}' token. So that text with few of them (a long
+    // expression, or a file without semicolons) still comes in pieces, it also ends at
+    // about one in 64 operators and '='s, picked by a hash of the token and the two before
+    // it. That depends on those tokens alone, so an edit elsewhere leaves the pieces where
+    // they were and the analysis can get back in step; and as the tokens all come before
+    // the end, the lexer re-scanning from one never moves an earlier end. ErrorHandler's
+    // checks carry nothing over any of these tokens.
+    private boolean endsStatement(int i) {
+        int type = lexer.type(i);
+        if (type == DELIMITER) {
+            char c = lexer.firstChar(i);
+            return c == ';' || c == '{' || c == '}';
+        }
+        return (type == OPERATOR || type == ASSIGNMENT) && i >= 2 && (hash(i - 2, i + 1) >>> 26) == 0;
+    }
+
+    // Hash of tokens [from, to), the first 32 characters of each.
+    private int hash(int from, int to) {
+        CharSequence source = lexer.source();
+        int h = 0;
+        for (int t = from; t < to; t++) {
+            for (int p = lexer.start(t), end = Math.min(lexer.end(t), p + 32); p < end; p++) {
+                h = 31 * h + source.charAt(p);
+            }
+            h = 31 * h + ' ';
+        }
+        return h * 0x9E3779B9;
+    }
+
+    // The statement of tokens [from, to), whose text is [textStart, end).
+    private StatementList.Statement statement(int from, int to, int textStart, int end, Checkpoint checkpoint) {
+        List<Diagnostic> diagnostics = check(from, to, textStart);
+        return new StatementList.Statement(end - textStart, diagnostics, assignments.take(), log.take(),
+                checkpoint);
+    }
+
+    private Checkpoint checkpoint() {
+        return new Checkpoint(analyzer.state(), log.scopes());
+    }
+
+    // Run the ErrorHandler checks over tokens [from, to), placing the diagnostics relative
+    // to textStart. The assignments they make are left in assignments.
+    private List<Diagnostic> check(int from, int to, int textStart) {
+        ErrorHandler handler = new ErrorHandler();
+        CharSequence source = lexer.source();
+        ErrorHandler.Checker checker = handler.checker(CharBuffer.wrap(source, textStart, source.length()),
+                assignments);
+        for (int t = from; t < to; t++) {
+            checker.token(lexer.type(t), lexer.start(t) - textStart, lexer.end(t) - textStart);
+        }
+        return handler.diagnostics().isEmpty() ? List.of() : handler.diagnostics();
+    }
+
+    // ErrorHandler reports an assignment's similar-name warnings after anything else about
+    // the name, in the order SimilarNames gives them.
+    private int compare(Placed a, Placed b) {
+        int c = statements.compare(a.statement, b.statement);
+        if (c == 0) c = Long.compare(a.diagnostic.offset, b.diagnostic.offset);
+        if (c == 0) c = Boolean.compare(a.similar(), b.similar());
+        return c != 0 ? c : Integer.compare(a.order, b.order);
+    }
+
+    // A diagnostic placed relative to the text of its statement; order is its place among
+    // those reported together.
+    static final class Placed {
+        final StatementList.Statement statement;
+        final Diagnostic diagnostic;
+        final int order;
+
+        Placed(StatementList.Statement statement, Diagnostic diagnostic, int order) {
+            this.statement = statement;
+            this.diagnostic = diagnostic;
+            this.order = order;
+        }
+
+        boolean similar() {
+            return diagnostic.code == Diagnostic.Code.SIMILAR_NAME;
+        }
+    }
+
+    // FinalSTable's state between two tokens.
+    static final class Checkpoint {
+        final FinalSTable.State state;
+        final List<String> scopes;
+
+        Checkpoint(FinalSTable.State state, List<String> scopes) {
+            this.state = state;
+            this.scopes = scopes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Checkpoint && state.equals(((Checkpoint) o).state)
+                    && scopes.equals(((Checkpoint) o).scopes);
+        }
+
+        @Override
+        public int hashCode() {
+            return state.hashCode() * 31 + scopes.hashCode();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package lexer;
+
+import dfa.Automaton;
+import metrics.Metrics;
+import metrics.PhaseEvent;
+
+import java.util.Arrays;
+
+// Token stream that is kept up to date while its source is edited.
+// Every token remembers how far the scan that produced it read: the lookahead the DFA
+// needed to find where the token ends, and any failed scans at the skipped characters
+// just before it. An edit re-scans from the end of the last token that read nothing at or
+// after the edit, and stops as soon as it starts a token, past the edit, where the old
+// stream also started one, since from there on both scans see the same text.
+// Text and tokens are gap buffers with the gap at the last edit. Tokens after the gap
+// store their start relative to the end of the text, so the offsets of all later tokens
+// shift without being touched. An edit costs time in proportion to the text re-scanned
+// and the distance from the previous edit, not to the size of the source.
+public class IncrementalLexer implements TokenList {
+    // Scans that read further than this past the token's start (in practice an unclosed
+    // /* comment) are also listed in far[], so finding the restart point need only look
+    // back this far through the tokens.
+    private static final int FAR = 256;
+
+    // What an edit did to the tokens: [first, first + removed) of the old stream were
+    // replaced by [first, first + inserted) of the new one. Tokens after them moved by
+    // delta characters.
+    public static final class Change {
+        public final int first;
+        public final int removed;
+        public final int inserted;
+        public final int delta;
+
+        Change(int first, int removed, int inserted, int delta) {
+            this.first = first;
+            this.removed = removed;
+            this.inserted = inserted;
+            this.delta = delta;
+        }
+
+        @Override
+        public String toString() {
+            return "tokens " + first + ": -" + removed + " +" + inserted + ", shift " + delta;
+        }
+    }
+
+    private final Automaton dfa;
+    private final GapBuffer text;
+    private int[] types = new int[64];
+    private int[] starts = new int[64];     // absolute before the gap, minus text length after it
+    private int[] lengths = new int[64];
+    private int[] reaches = new int[64];    // end of everything read for the token, minus its start
+    private Object[] attachments = new Object[64];
+    private int gapStart = 0;
+    private int gapEnd = 64;
+    private int[] farStarts = new int[8];   // absolute start and reach end of far-reaching tokens
+    private int[] farReaches = new int[8];
+    private int farCount;
+    private int[] stashStarts = new int[8];
+    private int[] stashReaches = new int[8];
+    private int stashCount;
+
+    public IncrementalLexer(CharSequence source) {
+        this(source, DFAScanner.forLexer());
+    }
+
+    public IncrementalLexer(CharSequence source, DFAScanner scanner) {
+        this.dfa = scanner.dfa();
+        this.text = new GapBuffer(source);
+        rescan(0, 0, 0, 0);
+    }
+
+    // Replace source[offset, offset + removed) with inserted and bring the tokens up to date.
+    public Change edit(int offset, int removed, CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length()) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" + removed + " in " + text.length());
+        }
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.TOKENIZE);
+        int first = restartIndex(offset);
+        moveGap(first);
+        int from = first == 0 ? 0 : end(first - 1);
+        stashFar(from);
+        text.replace(offset, removed, inserted);
+        Change change = rescan(first, from, offset + inserted.length(), inserted.length() - removed);
+        Metrics.end(phase, change.inserted);
+        return change;
+    }
+
+    @Override
+    public CharSequence source() {
+        return text;
+    }
+
+    @Override
+    public int size() {
+        return types.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public int type(int i) {
+        return types[slot(i)];
+    }
+
+    @Override
+    public int start(int i) {
+        return i < gapStart ? starts[i] : starts[slot(i)] + text.length();
+    }
+
+    @Override
+    public int length(int i) {
+        return lengths[slot(i)];
+    }
+
+    // Caller data kept with a token until an edit re-scans it.
+    public Object attachment(int i) {
+        return attachments[slot(i)];
+    }
+
+    public void attach(int i, Object value) {
+        attachments[slot(i)] = value;
+    }
+
+    // Index of the first token that starts at or after pos.
+    public int tokenAt(int pos) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) < pos) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int slot(int i) {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("token " + i + " of " + size());
+        return i < gapStart ? i : i + (gapEnd - gapStart);
+    }
+
+    // The first token whose scan read anything at or after offset.
+    int restartIndex(int offset) {
+        int first = tokenAt(offset);
+        for (int j = first - 1; j >= 0; j--) {
+            int start = start(j);
+            if (start <= offset - FAR) break;
+            if (start + reaches[slot(j)] > offset) first = j;
+        }
+        for (int f = 0; f < farCount; f++) {
+            if (farReaches[f] > offset) first = Math.min(first, tokenAt(farStarts[f]));
+        }
+        return first;
+    }
+
+    // Scan from `from`, replacing the old tokens after the gap until the two streams agree.
+    private Change rescan(int first, int from, int editEnd, int delta) {
+        Automaton dfa = this.dfa;
+        CharSequence text = this.text;
+        int limit = text.length();
+        long transitions = 0;
+        int removed = 0;
+        int inserted = 0;
+        int synced = -1;
+        int pos = from;
+        int readTo = from;      // end of what the failed scans since the last token read
+        while (true) {
+            // Drop old tokens that began inside the edit or that the new scan has passed.
+            int stale = Math.max(pos, editEnd);
+            while (gapEnd < types.length && starts[gapEnd] + limit < stale) {
+                attachments[gapEnd++] = null;
+                removed++;
+            }
+            if (pos >= limit) break;
+            if (gapEnd < types.length && starts[gapEnd] + limit == pos) {
+                int reach = Math.max(reaches[gapEnd], readTo - pos);
+                if (reach > FAR) addFar(pos, pos + reach);
+                reaches[gapEnd] = reach;
+                synced = pos;
+                break;
+            }
+
+            int state = dfa.start();
+            int lastEnd = -1;
+            int lastType = -1;
+            int i = pos;
+            for (; i < limit; i++) {
+                state = dfa.step(state, text.charAt(i));
+                if (state == Automaton.DEAD) break;
+                int type = dfa.acceptType(state);
+                if (type >= 0) {
+                    lastEnd = i + 1;
+                    lastType = type;
+                }
+            }
+            // i + 1: a scan that ran into the end of the text depends on where it ends.
+            transitions += Math.min(i + 1, limit) - pos;
+            readTo = Math.max(readTo, i + 1);
+            if (lastEnd < 0) {
+                pos++;
+                continue;
+            }
+            insert(lastType, pos, lastEnd - pos, readTo - pos);
+            inserted++;
+            pos = lastEnd;
+            readTo = pos;
+        }
+        Metrics.transitions(transitions);
+        restoreFar(synced < 0 ? Integer.MAX_VALUE : synced - delta, delta);
+        return new Change(first, removed, inserted, delta);
+    }
+
+    private void insert(int type, int start, int length, int reach) {
+        if (gapStart == gapEnd) grow();
+        types[gapStart] = type;
+        starts[gapStart] = start;
+        lengths[gapStart] = length;
+        reaches[gapStart] = reach;
+        attachments[gapStart] = null;
+        gapStart++;
+        if (reach > FAR) addFar(start, start + reach);
+    }
+
+    // Move the token gap so that it sits just before token `index`.
+    private void moveGap(int index) {
+        int limit = text.length();
+        while (gapStart > index) {
+            gapStart--;
+            gapEnd--;
+            copy(gapStart, gapEnd);
+            starts[gapEnd] -= limit;
+        }
+        while (gapStart < index) {
+            copy(gapEnd, gapStart);
+            starts[gapStart] += limit;
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    private void copy(int from, int to) {
+        if (from == to) return;     // the gap is empty
+        types[to] = types[from];
+        starts[to] = starts[from];
+        lengths[to] = lengths[from];
+        reaches[to] = reaches[from];
+        attachments[to] = attachments[from];
+        attachments[from] = null;
+    }
+
+    private void grow() {
+        int tail = types.length - gapEnd;
+        int capacity = types.length * 2;
+        types = regrow(types, capacity, tail);
+        starts = regrow(starts, capacity, tail);
+        lengths = regrow(lengths, capacity, tail);
+        reaches = regrow(reaches, capacity, tail);
+        Object[] moved = Arrays.copyOf(attachments, capacity);
+        System.arraycopy(attachments, gapEnd, moved, capacity - tail, tail);
+        Arrays.fill(moved, gapEnd, capacity - tail, null);
+        attachments = moved;
+        gapEnd = capacity - tail;
+    }
+
+    private static int[] regrow(int[] a, int capacity, int tail) {
+        int[] bigger = Arrays.copyOf(a, capacity);
+        System.arraycopy(a, a.length - tail, bigger, capacity - tail, tail);
+        return bigger;
+    }
+
+    // Set aside the far-reaching tokens at or after `from`; the re-scan will either drop
+    // or keep them.
+    private void stashFar(int from) {
+        int kept = 0;
+        stashCount = 0;
+        for (int f = 0; f < farCount; f++) {
+            if (farStarts[f] >= from) {
+                if (stashCount == stashStarts.length) {
+                    stashStarts = Arrays.copyOf(stashStarts, stashCount * 2);
+                    stashReaches = Arrays.copyOf(stashReaches, stashCount * 2);
+                }
+                stashStarts[stashCount] = farStarts[f];
+                stashReaches[stashCount++] = farReaches[f];
+            } else {
+                farStarts[kept] = farStarts[f];
+                farReaches[kept++] = farReaches[f];
+            }
+        }
+        farCount = kept;
+    }
+
+    // Put back the stashed tokens the re-scan kept, shifted by delta. keptFrom is the old
+    // start of the token the re-scan synchronized on, which it has already re-listed.
+    private void restoreFar(int keptFrom, int delta) {
+        for (int f = 0; f < stashCount; f++) {
+            if (stashStarts[f] > keptFrom) addFar(stashStarts[f] + delta, stashReaches[f] + delta);
+        }
+        stashCount = 0;
+    }
+
+    private void addFar(int start, int reachEnd) {
+        if (farCount == farStarts.length) {
+            farStarts = Arrays.copyOf(farStarts, farCount * 2);
+            farReaches = Arrays.copyOf(farReaches, farCount * 2);
+        }
+        farStarts[farCount] = start;
+        farReaches[farCount++] = reachEnd;
+    }
+}
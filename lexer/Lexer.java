@@ -1,5 +1,11 @@
 package lexer;
 
+import errorHandler.ErrorHandler;
+import metrics.Metrics;
+import metrics.PhaseEvent;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.*;
 
@@ -12,6 +18,7 @@ public class Lexer {
 		    "'[a-z]'|" +                                      // Characters
 		    "[+\\-*/%^<>]=?|" +                               // Operators
 		    "[=;(){}\\[\\]]|" +                               // Delimiters
+		    "[a-zA-Z]*[A-Z][a-zA-Z]*|" +                      // Names with uppercase letters (reported as errors)
 		    "[a-z]+";                                         // Identifiers (lowercase only)                                                                                                                               
 
     public static final Pattern TOKEN_PATTERN = Pattern.compile(COMBINED_REGEX);
@@ -27,7 +34,53 @@ public class Lexer {
     	    "|([;,(){}])";                                              // Delimiters
 
 
+    // Tokenize with the project's own token DFA (longest match, comments dropped).
+    // Lexemes are interned, so repeated identifiers share one String.
     public static List<String> tokenize(String input) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.TOKENIZE);
+        List<String> tokens = new ArrayList<>();
+        NamePool pool = new NamePool();
+        int comment = TokenType.COMMENT.ordinal();
+        DFAScanner.forLexer().scan(input, (type, start, end) -> {
+            if (type != comment) {
+                tokens.add(pool.name(pool.intern(input, start, end)));
+            }
+        });
+        Metrics.end(phase, tokens.size());
+        return tokens;
+    }
+
+    // Tokenize into a compact TokenBuffer carrying type and position for every token.
+    // Comments are kept as COMMENT tokens.
+    public static TokenBuffer tokenizeToBuffer(CharSequence input) {
+        return tokenizeToBuffer(input, null);
+    }
+
+    // As above, interning identifiers into the given pool as they are scanned.
+    public static TokenBuffer tokenizeToBuffer(CharSequence input, NamePool pool) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.TOKENIZE);
+        TokenBuffer buffer = new TokenBuffer(input, Math.max(16, input.length() / 4), pool);
+        DFAScanner.forLexer().scan(input, buffer);
+        Metrics.end(phase, buffer.size());
+        return buffer;
+    }
+
+    // As above, running the ErrorHandler checks on each token in the same pass.
+    public static TokenBuffer tokenizeToBuffer(CharSequence input, NamePool pool, ErrorHandler errors) {
+        PhaseEvent phase = Metrics.begin(Metrics.Phase.TOKENIZE);
+        TokenBuffer buffer = new TokenBuffer(input, Math.max(16, input.length() / 4), pool);
+        DFAScanner.forLexer().scan(input, errors.checker(input, buffer));
+        Metrics.end(phase, buffer.size());
+        return buffer;
+    }
+
+    // Tokenize a source file by memory-mapping it and scanning its bytes.
+    public static List<String> tokenize(Path file) throws IOException {
+        return MappedSource.open(file).tokenize();
+    }
+
+    // Reference tokenizer using TOKEN_PATTERN and java.util.regex.
+    public static List<String> tokenizeRegex(String input) {
         List<String> tokens = new ArrayList<>();
         Matcher matcher = TOKEN_PATTERN.matcher(input);
 
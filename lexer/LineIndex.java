@@ -0,0 +1,77 @@
+package lexer;
+
+import java.util.Arrays;
+
+// The line breaks of a source that is being edited, for placing IncrementalCompiler's
+// diagnostics. The offsets of the '\n' characters are kept in order in a gap buffer with
+// the gap at the last edit, those after the gap relative to the end of the text, so an edit
+// costs time in proportion to the text it inserts and the line breaks between it and the
+// previous one, and a line number is a binary search.
+final class LineIndex {
+    private final CharSequence text;
+    private int[] breaks = new int[64];
+    private int gapStart = 0;
+    private int gapEnd = 64;
+
+    LineIndex(CharSequence text) {
+        this.text = text;
+        add(text, 0);
+    }
+
+    // Call before text[offset, offset + removed) is replaced with inserted.
+    void replace(int offset, int removed, CharSequence inserted) {
+        int limit = text.length();
+        moveGap(count(offset), limit);
+        while (gapEnd < breaks.length && breaks[gapEnd] + limit < offset + removed) gapEnd++;
+        add(inserted, offset);
+    }
+
+    // Line of the character at offset, from 1.
+    int line(long offset) {
+        return count(offset) + 1;
+    }
+
+    // Column of the character at offset, from 1.
+    int column(long offset) {
+        int before = count(offset);
+        return (int) (offset - (before == 0 ? 0 : at(before - 1) + 1)) + 1;
+    }
+
+    private void add(CharSequence s, int offset) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            if (s.charAt(i) != '\n') continue;
+            if (gapStart == gapEnd) grow();
+            breaks[gapStart++] = offset + i;
+        }
+    }
+
+    // Number of line breaks before offset.
+    private int count(long offset) {
+        int lo = 0;
+        int hi = breaks.length - (gapEnd - gapStart);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (at(mid) < offset) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private int at(int i) {
+        return i < gapStart ? breaks[i] : breaks[i + (gapEnd - gapStart)] + text.length();
+    }
+
+    private void moveGap(int index, int limit) {
+        while (gapStart > index) breaks[--gapEnd] = breaks[--gapStart] - limit;
+        while (gapStart < index) breaks[gapStart++] = breaks[gapEnd++] + limit;
+    }
+
+    private void grow() {
+        int tail = breaks.length - gapEnd;
+        int capacity = breaks.length * 2;
+        int[] bigger = Arrays.copyOf(breaks, capacity);
+        System.arraycopy(breaks, gapEnd, bigger, capacity - tail, tail);
+        breaks = bigger;
+        gapEnd = capacity - tail;
+    }
+}
@@ -0,0 +1,83 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// A source file memory-mapped for byte-level lexing.
+// Tokens are ASCII outside comments, and inside them a UTF-8 byte steps like the character
+// it is part of, so the DFA runs directly over the file's bytes: there is no UTF-16
+// decoding and no copy of the file on the heap. Token positions are byte
+// offsets, and text is only decoded for the lexemes a caller asks for.
+// Files are mapped in one piece, so they must be smaller than 2 GB; use TokenStream
+// for anything larger.
+public class MappedSource {
+    private final Path path;
+    private final MappedByteBuffer bytes;
+
+    private MappedSource(Path path, MappedByteBuffer bytes) {
+        this.path = path;
+        this.bytes = bytes;
+    }
+
+    public static MappedSource open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path + " (" + size + " bytes)");
+            }
+            // The mapping stays valid after the channel is closed.
+            return new MappedSource(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    // Length of the file in bytes.
+    public int length() {
+        return bytes.limit();
+    }
+
+    // Read-only view of the mapped bytes.
+    public ByteBuffer bytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    // Scan the whole file with the lexer's DFA, reporting byte offsets.
+    public void scan(DFAScanner.TokenSink sink) {
+        scan(DFAScanner.forLexer(), sink);
+    }
+
+    public void scan(DFAScanner scanner, DFAScanner.TokenSink sink) {
+        scanner.scan(bytes, 0, bytes.limit(), sink);
+    }
+
+    // Decode the text of bytes [start, end).
+    public String text(int start, int end) {
+        byte[] chunk = new byte[end - start];
+        ByteBuffer view = bytes.duplicate();
+        view.position(start);
+        view.get(chunk);
+        return new String(chunk, StandardCharsets.UTF_8);
+    }
+
+    // Tokenize the file like Lexer.tokenize, dropping comments.
+    public List<String> tokenize() {
+        List<String> tokens = new ArrayList<>();
+        int comment = TokenType.COMMENT.ordinal();
+        scan((type, start, end) -> {
+            if (type != comment) {
+                tokens.add(text(start, end));
+            }
+        });
+        return tokens;
+    }
+}
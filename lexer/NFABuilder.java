@@ -1,51 +1,218 @@
 package lexer;
 
+import nfa.DenseNFA;
 import nfa.NFA;
-import nfa.State;
-import nfa.Transition;
+import nfa.NFAArena;
+import dfa.CharRange;
 import dfa.DFA;
 import dfa.DFAState;
+import dfa.LazyDFA;
 
 import java.util.*;
+import java.util.function.IntPredicate;
 
 public class NFABuilder {
 
-    private static int stateCounter = 0;
-    private static int dfaStateCounter = 0;
-    private static final Map<Character, Integer> precedence = new HashMap<>();
-    
-    static {
-        precedence.put('(', 0);
-        precedence.put('|', 1);
-        precedence.put('·', 2);
-        precedence.put('*', 3);
-        precedence.put('+', 3);
-        precedence.put('?', 3);
-    }
+    // Largest number of states a single repeat() may create.
+    public static final int MAX_REPEAT_STATES = 100_000;
     
     // Create an NFA that recognizes a single literal character.
     public static NFA createBasicNFA(char c) {
-        State start = new State(stateCounter++);
-        State end = new State(stateCounter++);
-        start.addTransition(c, end);
-        NFA nfa = new NFA(start, end);
-        nfa.states.add(start);
-        nfa.states.add(end);
-        return nfa;
+        NFAArena arena = new NFAArena();
+        int start = arena.newState();
+        int end = arena.newState();
+        arena.addEdge(start, c, end);
+        return new NFA(arena, start, end);
     }
     
-    // Create an NFA that recognizes any character in the range [start, end].
+    // Create an NFA that recognizes any character in the range [start, end], as a single
+    // range edge.
     public static NFA createCharRange(char startChar, char endChar) {
-        NFA result = null;
-        for (char c = startChar; c <= endChar; c++) {
-            NFA charNFA = createBasicNFA(c);
-            if (result == null) {
-                result = charNFA;
-            } else {
-                result = union(result, charNFA);
+        NFAArena arena = new NFAArena();
+        int start = arena.newState();
+        int end = arena.newState();
+        arena.addRange(start, startChar, endChar, end);
+        return new NFA(arena, start, end);
+    }
+    
+    // Create an NFA that recognizes any character in [start, end] except those in excluded,
+    // with one range edge per gap between excluded characters.
+    public static NFA createCharRangeExcluding(char startChar, char endChar, String excluded) {
+        char[] holes = excluded.toCharArray();
+        Arrays.sort(holes);
+        NFAArena arena = new NFAArena();
+        int start = arena.newState();
+        int end = arena.newState();
+        int low = startChar;
+        for (char hole : holes) {
+            if (hole < low || hole > endChar) continue;
+            if (hole > low) arena.addRange(start, low, hole - 1, end);
+            low = hole + 1;
+        }
+        if (low <= endChar) arena.addRange(start, low, endChar, end);
+        return new NFA(arena, start, end);
+    }
+    
+    // Create an NFA that recognizes any single character of the given string.
+    public static NFA createCharSet(String chars) {
+        NFAArena arena = new NFAArena();
+        int start = arena.newState();
+        int end = arena.newState();
+        for (int i = 0; i < chars.length(); i++) {
+            arena.addEdge(start, chars.charAt(i), end);
+        }
+        return new NFA(arena, start, end);
+    }
+    
+    // Create an NFA that recognizes any character in the given ranges, one edge per range.
+    public static NFA createCharClass(Collection<CharRange> ranges) {
+        NFAArena arena = new NFAArena();
+        int start = arena.newState();
+        int end = arena.newState();
+        for (CharRange range : ranges) {
+            arena.addRange(start, range.low, range.high, end);
+        }
+        return new NFA(arena, start, end);
+    }
+    
+    // Create an NFA that recognizes any character the test accepts, e.g. Character::isLetter
+    // for Unicode letters. Each run of accepted characters becomes one range edge.
+    public static NFA createCharClass(IntPredicate test) {
+        NFAArena arena = new NFAArena();
+        int start = arena.newState();
+        int end = arena.newState();
+        int c = 0;
+        while (c <= Character.MAX_VALUE) {
+            if (!test.test(c)) {
+                c++;
+                continue;
             }
+            int low = c;
+            while (c <= Character.MAX_VALUE && test.test(c)) c++;
+            arena.addRange(start, low, c - 1, end);
+        }
+        return new NFA(arena, start, end);
+    }
+    
+    // Build an NFA that recognizes zero or one occurrence of the given NFA.
+    public static NFA optional(NFA nfa) {
+        return applyClosure(nfa, '?');
+    }
+    
+    // Build an NFA that recognizes between min and max occurrences of the given NFA
+    // (max < 0 for no upper bound), i.e. nfa{min,max}.
+    // The copies are chained, and every copy from the min-th on gets an epsilon edge to
+    // one shared end state. That is the nested-optional form x(x(x)?)? without the two
+    // extra states per level that nesting applyClosure would add. An unbounded repeat
+    // loops on its last copy. Throws IllegalArgumentException if the result would have
+    // more than MAX_REPEAT_STATES states.
+    public static NFA repeat(NFA nfa, int min, int max) {
+        if (min < 0 || (max >= 0 && max < min)) {
+            throw new IllegalArgumentException("Bad repetition bounds {" + min + "," + max + "}");
+        }
+        if (max == 0) {
+            return buildStringNFA("");
+        }
+        if (max < 0 && min == 0) {
+            return star(nfa);
+        }
+        int copies = max < 0 ? min : max;
+        NFAArena arena = nfa.arena();
+        Fragment fragment = new Fragment(arena, nfa.start(), nfa.end());
+        if ((long) copies * fragment.states.length + 2 > MAX_REPEAT_STATES) {
+            throw new IllegalArgumentException("Repetition {" + min + "," + max + "} of a "
+                    + fragment.states.length + "-state NFA exceeds " + MAX_REPEAT_STATES + " states");
+        }
+
+        int[] starts = new int[copies];
+        int[] ends = new int[copies];
+        starts[0] = nfa.start();
+        ends[0] = nfa.end();
+        for (int i = 1; i < copies; i++) {
+            int base = fragment.copy(arena);
+            starts[i] = base + fragment.startIndex;
+            ends[i] = base + fragment.endIndex;
+        }
+        for (int i = 0; i + 1 < copies; i++) {
+            arena.addEpsilon(ends[i], starts[i + 1]);
+        }
+        int last = copies - 1;
+        if (max < 0) {
+            arena.addEpsilon(ends[last], starts[last]);
+            return new NFA(arena, starts[0], ends[last]);
+        }
+        int start = starts[0];
+        int end = arena.newState();
+        if (min == 0) {
+            start = arena.newState();
+            arena.addEpsilon(start, starts[0]);
+            arena.addEpsilon(start, end);
+        }
+        for (int i = Math.max(min, 1) - 1; i < copies; i++) {
+            arena.addEpsilon(ends[i], end);
+        }
+        return new NFA(arena, start, end);
+    }
+
+    // The states of an NFA reachable from its start without leaving through its end,
+    // snapshotted so that they can be stamped out repeatedly.
+    private static class Fragment {
+        final int[] states;                  // arena ids, in discovery order
+        final int startIndex;
+        final int endIndex;
+        final int[] edgeFrom, edgeLow, edgeHigh, edgeTo;  // local state indexes
+
+        Fragment(NFAArena arena, int start, int end) {
+            Map<Integer, Integer> local = new HashMap<>();
+            List<Integer> order = new ArrayList<>();
+            local.put(start, 0);
+            order.add(start);
+            List<int[]> edges = new ArrayList<>();
+            for (int i = 0; i < order.size(); i++) {
+                int s = order.get(i);
+                if (s == end) continue;
+                for (int e = arena.firstEdge(s); e >= 0; e = arena.nextEdge(e)) {
+                    int to = arena.target(e);
+                    Integer index = local.get(to);
+                    if (index == null) {
+                        index = order.size();
+                        local.put(to, index);
+                        order.add(to);
+                    }
+                    edges.add(new int[] {i, arena.low(e), arena.high(e), index});
+                }
+            }
+            if (!local.containsKey(end)) {
+                local.put(end, order.size());
+                order.add(end);
+            }
+            states = new int[order.size()];
+            for (int i = 0; i < states.length; i++) states[i] = order.get(i);
+            startIndex = 0;
+            endIndex = local.get(end);
+            edgeFrom = new int[edges.size()];
+            edgeLow = new int[edges.size()];
+            edgeHigh = new int[edges.size()];
+            edgeTo = new int[edges.size()];
+            for (int i = 0; i < edgeFrom.length; i++) {
+                int[] edge = edges.get(i);
+                edgeFrom[i] = edge[0];
+                edgeLow[i] = edge[1];
+                edgeHigh[i] = edge[2];
+                edgeTo[i] = edge[3];
+            }
+        }
+
+        // Add a fresh copy of the fragment to the arena and return the id of its first
+        // state; local state i of the copy is that id + i.
+        int copy(NFAArena arena) {
+            int base = arena.newState();
+            for (int i = 1; i < states.length; i++) arena.newState();
+            for (int i = 0; i < edgeFrom.length; i++) {
+                arena.addRange(base + edgeFrom[i], edgeLow[i], edgeHigh[i], base + edgeTo[i]);
+            }
+            return base;
         }
-        return result;
     }
     
     // Build an NFA that recognizes one or more occurrences (plus) of the given NFA.
@@ -62,8 +229,9 @@ public class NFABuilder {
     // Build an NFA that recognizes the exact string s.
     public static NFA buildStringNFA(String s) {
         if (s == null || s.isEmpty()) {
-            State state = new State(stateCounter++);
-            return new NFA(state, state);
+            NFAArena arena = new NFAArena();
+            int state = arena.newState();
+            return new NFA(arena, state, state);
         }
         NFA result = createBasicNFA(s.charAt(0));
         for (int i = 1; i < s.length(); i++) {
@@ -75,152 +243,162 @@ public class NFABuilder {
     
     // Return the union of two NFAs.
     public static NFA union(NFA a, NFA b) {
-        State start = new State(stateCounter++);
-        State end = new State(stateCounter++);
-        start.addTransition(null, a.start);
-        start.addTransition(null, b.start);
-        a.end.addTransition(null, end);
-        b.end.addTransition(null, end);
-        NFA nfa = new NFA(start, end);
-        nfa.states.addAll(a.states);
-        nfa.states.addAll(b.states);
-        nfa.states.add(start);
-        nfa.states.add(end);
-        return nfa;
+        NFAArena arena = NFAArena.join(a, b);
+        int start = arena.newState();
+        int end = arena.newState();
+        arena.addEpsilon(start, a.start());
+        arena.addEpsilon(start, b.start());
+        arena.addEpsilon(a.end(), end);
+        arena.addEpsilon(b.end(), end);
+        return new NFA(arena, start, end);
     }
     
     // Return the concatenation of two NFAs.
     public static NFA concatenate(NFA a, NFA b) {
-        a.end.addTransition(null, b.start);
-        NFA nfa = new NFA(a.start, b.end);
-        nfa.states.addAll(a.states);
-        nfa.states.addAll(b.states);
-        return nfa;
+        NFAArena arena = NFAArena.join(a, b);
+        arena.addEpsilon(a.end(), b.start());
+        return new NFA(arena, a.start(), b.end());
     }
     
     // Apply a closure operator to an NFA.
     // type can be '*', '+', or '?'.
     public static NFA applyClosure(NFA nfa, char type) {
-        State start = new State(stateCounter++);
-        State end = new State(stateCounter++);
-        start.addTransition(null, nfa.start);
+        NFAArena arena = nfa.arena();
+        int start = arena.newState();
+        int end = arena.newState();
+        arena.addEpsilon(start, nfa.start());
         if (type == '*' || type == '?') {
-            start.addTransition(null, end);
+            arena.addEpsilon(start, end);
         }
-        nfa.end.addTransition(null, end);
+        arena.addEpsilon(nfa.end(), end);
         if (type == '*' || type == '+') {
-            nfa.end.addTransition(null, nfa.start);
+            arena.addEpsilon(nfa.end(), nfa.start());
         }
-        NFA result = new NFA(start, end);
-        result.states.addAll(nfa.states);
-        result.states.add(start);
-        result.states.add(end);
-        return result;
+        return new NFA(arena, start, end);
     }
     
     // Convert an NFA to a DFA using subset construction.
     public static DFA convertToDFA(NFA nfa) {
+        return convertToDFA(toDenseNFA(Collections.singletonList(nfa), Collections.singletonList(0)));
+    }
+
+    // Convert several token NFAs into one DFA that recognizes all of them.
+    // nfas.get(i) accepts token type tokenTypes.get(i); where a DFA state accepts several
+    // types, the lowest type id wins, so conflicts are resolved once here and not per token.
+    public static DFA convertToDFA(List<NFA> nfas, List<Integer> tokenTypes) {
+        return convertToDFA(toDenseNFA(nfas, tokenTypes));
+    }
+
+    // Like convertToDFA, but DFA states are only built as scanning reaches them, keeping
+    // at most maxStates of them at a time.
+    public static LazyDFA lazyDFA(List<NFA> nfas, List<Integer> tokenTypes, int maxStates) {
+        return new LazyDFA(toDenseNFA(nfas, tokenTypes), maxStates);
+    }
+
+    // Dense snapshot of several token NFAs; where one state accepts several types the
+    // lowest type id wins.
+    static DenseNFA toDenseNFA(List<NFA> nfas, List<Integer> tokenTypes) {
+        NFAArena arena = nfas.get(0).arena();
+        for (int i = 1; i < nfas.size(); i++) {
+            arena = NFAArena.join(nfas.get(0), nfas.get(i));
+        }
+        int[] acceptTypes = new int[arena.stateCount()];
+        Arrays.fill(acceptTypes, -1);
+        Set<Integer> starts = new LinkedHashSet<>();
+        for (int i = 0; i < nfas.size(); i++) {
+            NFA nfa = nfas.get(i);
+            starts.add(nfa.start());
+            int type = tokenTypes.get(i);
+            int end = nfa.end();
+            if (acceptTypes[end] < 0 || type < acceptTypes[end]) acceptTypes[end] = type;
+        }
+        int[] startIds = new int[starts.size()];
+        int k = 0;
+        for (int start : starts) startIds[k++] = start;
+        return DenseNFA.of(arena, startIds, acceptTypes);
+    }
+
+    // Subset construction over a dense snapshot of the NFA. Sets of NFA states are BitSets
+    // and existing DFA states are found through a HashMap keyed on them; the per-symbol
+    // move sets are scratch buffers reused for every DFA state, and closures come from
+    // the per-state cache in DenseNFA. Symbols are the NFA's disjoint alphabet intervals,
+    // so the work per state depends on how many ranges there are, not how wide they are.
+    private static DFA convertToDFA(DenseNFA nfa) {
         DFA dfa = new DFA();
-        Set<Character> alphabet = getAlphabet(nfa);
-        dfa.alphabet = alphabet;
-        Set<State> initialNFAStates = epsilonClosure(Collections.singleton(nfa.start));
-        DFAState initialState = new DFAState(initialNFAStates, dfaStateCounter++);
-        initialState.isFinal = isFinalState(initialNFAStates, nfa.end);
+        CharRange[] ranges = new CharRange[nfa.alphabetSize()];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new CharRange(nfa.lows[i], nfa.highs[i]);
+            dfa.alphabet.add(ranges[i]);
+        }
+        BitSet[] moves = new BitSet[ranges.length];
+        for (int i = 0; i < moves.length; i++) {
+            moves[i] = new BitSet(nfa.size);
+        }
+        int[] touched = new int[ranges.length];
+        Map<BitSet, DFAState> known = new HashMap<>();
+
+        BitSet startSet = new BitSet(nfa.size);
+        for (int s : nfa.starts) startSet.set(s);
+        BitSet initialNFAStates = nfa.epsilonClosure(startSet);
+        DFAState initialState = newDFAState(dfa, nfa, initialNFAStates, known);
         dfa.start = initialState;
-        dfa.states.add(initialState);
-        if (initialState.isFinal) dfa.finalStates.add(initialState);
-        Queue<DFAState> queue = new LinkedList<>();
+        Queue<DFAState> queue = new ArrayDeque<>();
         queue.add(initialState);
         while (!queue.isEmpty()) {
             DFAState current = queue.poll();
-            for (Character symbol : alphabet) {
-                Set<State> moved = move(current.nfaStates, symbol);
-                Set<State> next = epsilonClosure(moved);
-                if (next.isEmpty()) continue;
-                DFAState nextDFA = findDFAState(dfa.states, next);
+            // Gather the move set of every symbol that leaves the current state.
+            int touchedCount = 0;
+            BitSet members = current.nfaStates;
+            for (int s = members.nextSetBit(0); s >= 0; s = members.nextSetBit(s + 1)) {
+                int[] symbols = nfa.symbols[s];
+                int[] symbolEnds = nfa.symbolEnds[s];
+                int[] targets = nfa.targets[s];
+                for (int e = 0; e < symbols.length; e++) {
+                    for (int symbol = symbols[e]; symbol <= symbolEnds[e]; symbol++) {
+                        BitSet move = moves[symbol];
+                        if (move.isEmpty()) touched[touchedCount++] = symbol;
+                        move.set(targets[e]);
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int symbol = touched[i];
+                BitSet next = nfa.epsilonClosure(moves[symbol]);
+                moves[symbol].clear();
+                DFAState nextDFA = known.get(next);
                 if (nextDFA == null) {
-                    nextDFA = new DFAState(next, dfaStateCounter++);
-                    nextDFA.isFinal = isFinalState(next, nfa.end);
-                    dfa.states.add(nextDFA);
-                    if (nextDFA.isFinal) dfa.finalStates.add(nextDFA);
+                    nextDFA = newDFAState(dfa, nfa, next, known);
                     queue.add(nextDFA);
                 }
-                Map<Character, DFAState> trans = dfa.transitionTable.computeIfAbsent(current, k -> new HashMap<>());
-                trans.put(symbol, nextDFA);
+                Map<CharRange, DFAState> trans = dfa.transitionTable.computeIfAbsent(current, k -> new HashMap<>());
+                trans.put(ranges[symbol], nextDFA);
             }
         }
         return dfa;
     }
     
-    // Compute the epsilon closure of a set of NFA states.
-    private static Set<State> epsilonClosure(Set<State> states) {
-        Set<State> closure = new HashSet<>(states);
-        Stack<State> stack = new Stack<>();
-        stack.addAll(states);
-        while (!stack.isEmpty()) {
-            State s = stack.pop();
-            for (Transition t : s.transitions) {
-                if (t.character == null && !closure.contains(t.to)) {
-                    closure.add(t.to);
-                    stack.push(t.to);
-                }
-            }
-        }
-        return closure;
-    }
-    
-    // Given a set of NFA states, return all states reachable by the given symbol.
-    private static Set<State> move(Set<State> states, Character symbol) {
-        Set<State> result = new HashSet<>();
-        for (State s : states) {
-            for (Transition t : s.transitions) {
-                if (t.character != null && t.character.equals(symbol)) {
-                    result.add(t.to);
-                }
-            }
-        }
-        return result;
-    }
-    
-    // Check if the set of NFA states contains the final state.
-    private static boolean isFinalState(Set<State> states, State nfaFinal) {
-        return states.contains(nfaFinal);
-    }
-    
-    // Compute the alphabet from all transitions in the NFA.
-    private static Set<Character> getAlphabet(NFA nfa) {
-        Set<Character> alphabet = new HashSet<>();
-        for (State s : nfa.states) {
-            for (Transition t : s.transitions) {
-                if (t.character != null) {
-                    alphabet.add(t.character);
-                }
-            }
-        }
-        return alphabet;
-    }
-    
-    // Find a DFAState in the set whose NFA state set equals the given set.
-    private static DFAState findDFAState(Set<DFAState> dfaStates, Set<State> nfaStates) {
-        for (DFAState d : dfaStates) {
-            if (d.nfaStates.equals(nfaStates)) {
-                return d;
-            }
-        }
-        return null;
+    // Register a new DFA state for the given NFA state set.
+    private static DFAState newDFAState(DFA dfa, DenseNFA nfa, BitSet nfaStates, Map<BitSet, DFAState> known) {
+        DFAState state = new DFAState(nfaStates, dfa.states.size());
+        state.tokenType = nfa.acceptType(nfaStates);
+        state.isFinal = state.tokenType >= 0;
+        known.put(nfaStates, state);
+        dfa.states.add(state);
+        if (state.isFinal) dfa.finalStates.add(state);
+        return state;
     }
     
     // For debugging: print the DFA transition table.
     public static void printDFATransitionTable(DFA dfa) {
         System.out.println("DFA Transition Table:");
         System.out.print("State\t");
-        for (Character c : dfa.alphabet) {
+        for (CharRange c : dfa.alphabet) {
             System.out.print(c + "\t");
         }
         System.out.println();
         for (DFAState s : dfa.states) {
             System.out.print("q" + s.id + "\t");
-            for (Character c : dfa.alphabet) {
+            for (CharRange c : dfa.alphabet) {
                 DFAState next = dfa.transitionTable.getOrDefault(s, new HashMap<>()).get(c);
                 System.out.print((next != null ? "q" + next.id : "-") + "\t");
             }
@@ -0,0 +1,160 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// The similar-name check of an IncrementalCompiler source, kept up to date as statements
+// are replaced. SimilarNames warns an assignment about the spellings of its name, other
+// than its own, first seen before it, in the order they were first seen; so the
+// assignments are kept by name, lowercased, and then by spelling, each spelling's in
+// source order. When statements are replaced, the new assignments are checked, and then
+// those whose warnings the edit can change: the ones the first use of some spelling moved
+// past, or every later one if the spellings are now first seen in a different order.
+final class NameIndex {
+    private final StatementList statements;
+    private final Map<String, Name> names = new HashMap<>();
+
+    // What the current edit has done so far.
+    private final Map<Name, List<NameLog.Assignment>> firsts = new HashMap<>();    // before it
+    private final List<NameLog.Assignment> added = new ArrayList<>();
+    private StatementList.Statement first;     // the first statement added
+
+    // The assignments to one name, by spelling.
+    private static final class Name {
+        final String key;
+        final Map<String, GapList<NameLog.Assignment>> spellings = new HashMap<>(2);
+
+        Name(String key) {
+            this.key = key;
+        }
+    }
+
+    NameIndex(StatementList statements) {
+        this.statements = statements;
+    }
+
+    // Forget the assignments of s, which is about to be removed from the list.
+    void remove(StatementList.Statement s) {
+        for (NameLog.Assignment assignment : s.assignments) {
+            Name name = touch(assignment.name);
+            GapList<NameLog.Assignment> uses = name.spellings.get(assignment.name);
+            uses.remove(assignment);
+            if (uses.isEmpty()) name.spellings.remove(assignment.name);
+        }
+    }
+
+    // Take in the assignments of s, which has just been inserted into the list.
+    void add(StatementList.Statement s) {
+        if (first == null) first = s;
+        int ordinal = 0;
+        for (NameLog.Assignment assignment : s.assignments) {
+            assignment.statement = s;
+            assignment.ordinal = ordinal++;
+            Name name = touch(assignment.name);
+            name.spellings.computeIfAbsent(assignment.name, k -> new GapList<>(this::compare)).add(assignment);
+            added.add(assignment);
+        }
+    }
+
+    // Pass each assignment whose warnings may have changed to warn, with the spellings
+    // SimilarNames would now warn it about, once the statements the added ones replace
+    // have been removed.
+    void settle(BiConsumer<NameLog.Assignment, List<String>> warn) {
+        for (Map.Entry<Name, List<NameLog.Assignment>> e : firsts.entrySet()) {
+            Name name = e.getKey();
+            List<NameLog.Assignment> now = firsts(name);
+            if (now.isEmpty()) names.remove(name.key);
+            if (now.size() < 2 && e.getValue().size() < 2) continue;   // no warnings either way
+            if (!spellings(now).equals(spellings(e.getValue()))) {
+                // In a different order: every assignment after the edit may be affected.
+                check(name, now, probe(), null, warn);
+                continue;
+            }
+            // The same order: an assignment is affected if the first use of a spelling has
+            // moved past it. A removed first use was where the added statements are now.
+            for (int i = 0; i < now.size(); i++) {
+                NameLog.Assignment was = e.getValue().get(i);
+                NameLog.Assignment is = now.get(i);
+                if (was == is) continue;
+                NameLog.Assignment from = was.statement.removed() ? probe() : was;
+                NameLog.Assignment to = is;
+                if (compare(from, to) > 0) {
+                    NameLog.Assignment t = from;
+                    from = to;
+                    to = t;
+                }
+                check(name, now, from, to, warn);
+            }
+        }
+        for (NameLog.Assignment assignment : added) {
+            warn.accept(assignment, warnings(assignment, firsts(names.get(assignment.name.toLowerCase()))));
+        }
+        firsts.clear();
+        added.clear();
+        first = null;
+    }
+
+    // Pass the assignments to name from `from` up to and including `to` (or the last if
+    // null) to warn; firsts are the first uses of its spellings.
+    private void check(Name name, List<NameLog.Assignment> firsts, NameLog.Assignment from, NameLog.Assignment to,
+                       BiConsumer<NameLog.Assignment, List<String>> warn) {
+        for (GapList<NameLog.Assignment> uses : name.spellings.values()) {
+            for (int i = uses.rank(from), n = uses.size(); i < n; i++) {
+                NameLog.Assignment assignment = uses.get(i);
+                if (to != null && compare(assignment, to) > 0) break;
+                warn.accept(assignment, warnings(assignment, firsts));
+            }
+        }
+    }
+
+    // The spellings SimilarNames warns assignment about, given the first uses of each.
+    private List<String> warnings(NameLog.Assignment assignment, List<NameLog.Assignment> firsts) {
+        List<String> warnings = List.of();
+        for (NameLog.Assignment earlier : firsts) {
+            if (compare(earlier, assignment) >= 0) break;
+            if (earlier.name.equals(assignment.name)) continue;
+            if (warnings.isEmpty()) warnings = new ArrayList<>(firsts.size() - 1);
+            warnings.add(earlier.name);
+        }
+        return warnings;
+    }
+
+    // The name spelling belongs to, with its first uses noted if this edit has not yet
+    // touched it.
+    private Name touch(String spelling) {
+        String key = spelling.toLowerCase();
+        Name name = names.computeIfAbsent(key, Name::new);
+        if (!firsts.containsKey(name)) firsts.put(name, firsts(name));
+        return name;
+    }
+
+    // The first use of each spelling of name, in source order.
+    private List<NameLog.Assignment> firsts(Name name) {
+        List<NameLog.Assignment> firsts = new ArrayList<>(name.spellings.size());
+        for (GapList<NameLog.Assignment> uses : name.spellings.values()) firsts.add(uses.get(0));
+        firsts.sort(this::compare);
+        return firsts;
+    }
+
+    private static List<String> spellings(List<NameLog.Assignment> firsts) {
+        List<String> spellings = new ArrayList<>(firsts.size());
+        for (NameLog.Assignment first : firsts) spellings.add(first.name);
+        return spellings;
+    }
+
+    // A key just before the assignments of the added statements.
+    private NameLog.Assignment probe() {
+        NameLog.Assignment probe = new NameLog.Assignment(null, 0);
+        probe.statement = first;
+        probe.ordinal = -1;
+        return probe;
+    }
+
+    private int compare(NameLog.Assignment a, NameLog.Assignment b) {
+        int c = statements.compare(a.statement, b.statement);
+        return c != 0 ? c : Integer.compare(a.ordinal, b.ordinal);
+    }
+}
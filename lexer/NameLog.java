@@ -0,0 +1,42 @@
+package lexer;
+
+import errorHandler.SimilarNames;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A SimilarNames that records the assignments ErrorHandler reports instead of checking
+// them. The similar-name check looks at every earlier statement, so IncrementalCompiler
+// keeps the assignments of each statement, and NameIndex does the check across them.
+class NameLog extends SimilarNames {
+
+    // One recorded assignment; the offset is relative to the text ErrorHandler was given.
+    static final class Assignment {
+        final String name;
+        final long offset;
+        StatementList.Statement statement;  // where NameIndex placed it
+        int ordinal;
+        List<IncrementalCompiler.Placed> warnings = List.of();     // SIMILAR_NAME, as reported
+
+        Assignment(String name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+
+    private List<Assignment> assignments = new ArrayList<>();
+
+    @Override
+    public List<String> assigned(String name, long offset) {
+        assignments.add(new Assignment(name, offset));
+        return List.of();
+    }
+
+    // The assignments recorded since the last take().
+    List<Assignment> take() {
+        if (assignments.isEmpty()) return List.of();
+        List<Assignment> taken = assignments;
+        assignments = new ArrayList<>();
+        return taken;
+    }
+}
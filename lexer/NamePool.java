@@ -0,0 +1,116 @@
+package lexer;
+
+import java.util.Arrays;
+
+// Interning pool that maps each distinct lexeme to a dense int id.
+// Lookups hash the characters of a range of the source directly, so a lexeme that has
+// been seen before costs no substring and no allocation; only the first occurrence of
+// each name is copied into the pool. Ids are dense (0, 1, 2, ...), so tables keyed by
+// name can be plain arrays and name equality is an int compare.
+public class NamePool {
+    private char[] chars = new char[1024];   // the text of every name, back to back
+    private int charCount;
+    private int[] offsets = new int[65];     // name id's text is chars[offsets[id] .. offsets[id + 1])
+    private int[] hashes = new int[64];
+    private String[] names = new String[64]; // materialized lazily by name()
+    private int size;
+    private int[] slots = new int[128];      // open-addressing table of id + 1, 0 when empty
+
+    public int size() {
+        return size;
+    }
+
+    public int intern(String s) {
+        return intern(s, 0, s.length());
+    }
+
+    // Return the id of text[start, end), adding it to the pool if it is new.
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                int id = add(text, start, end, hash);
+                slots[slot] = id + 1;
+                if (size * 2 > slots.length) rehash();
+                return id;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && equals(id, text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    // Return the id of text[start, end), or -1 if it has never been interned.
+    public int lookup(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) return -1;
+            int id = entry - 1;
+            if (hashes[id] == hash && equals(id, text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    // The text of a name, created once per id.
+    public String name(int id) {
+        String name = names[id];
+        if (name == null) {
+            name = new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+            names[id] = name;
+        }
+        return name;
+    }
+
+    private int add(CharSequence text, int start, int end, int hash) {
+        int id = size++;
+        int length = end - start;
+        if (charCount + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + length));
+        }
+        for (int i = start; i < end; i++) {
+            chars[charCount++] = text.charAt(i);
+        }
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        hashes[id] = hash;
+        offsets[id + 1] = charCount;
+        return id;
+    }
+
+    private boolean equals(int id, CharSequence text, int start, int end) {
+        int from = offsets[id];
+        if (offsets[id + 1] - from != end - start) return false;
+        for (int i = start; i < end; i++) {
+            if (chars[from++] != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] bigger = new int[slots.length * 2];
+        int mask = bigger.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (bigger[slot] != 0) slot = (slot + 1) & mask;
+            bigger[slot] = id + 1;
+        }
+        slots = bigger;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + text.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
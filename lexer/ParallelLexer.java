@@ -0,0 +1,132 @@
+package lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Lexes a large input in parallel chunks on a fork-join pool.
+// The input is cut just after newlines into chunks of roughly chunkSize characters, and
+// every chunk is scanned speculatively as if a fresh token started at its first
+// character. That guess is wrong when a token (in practice a multi-line /* ... */
+// comment) runs across the cut, so the chunks are stitched together in order: if the
+// previous chunk's last token ends past a cut, the next chunk is re-scanned from that
+// point until it reaches a token the speculative scan also produced, after which the
+// speculative tokens are correct and are reused as they are.
+public class ParallelLexer {
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final DFAScanner scanner;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelLexer() {
+        this(DFAScanner.forLexer(), ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelLexer(DFAScanner scanner, ForkJoinPool pool, int chunkSize) {
+        this.scanner = scanner;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    // Scan the whole input, reporting tokens to the sink in input order.
+    // The sink is called from the calling thread only.
+    public void scan(CharSequence input, DFAScanner.TokenSink sink) {
+        int[] cuts = cuts(input);
+        int chunks = cuts.length - 1;
+        if (chunks == 1) {
+            scanner.scan(input, sink);
+            return;
+        }
+
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int from = cuts[i];
+            int stop = cuts[i + 1];
+            tasks.add(pool.submit(() -> {
+                Chunk chunk = new Chunk();
+                chunk.endPos = scanner.scan(input, from, stop, input.length(), chunk);
+                return chunk;
+            }));
+        }
+
+        int resume = 0;
+        for (int i = 0; i < chunks; i++) {
+            Chunk chunk = tasks.get(i).join();
+            int stop = cuts[i + 1];
+            int first = 0;
+            if (resume > cuts[i]) {
+                // The previous chunk's last token ran into this one: re-scan until we meet
+                // a token the speculative scan agrees on.
+                first = -1;
+                int pos = resume;
+                while (pos < stop) {
+                    int k = Arrays.binarySearch(chunk.starts, 0, chunk.size, pos);
+                    if (k >= 0) {
+                        first = k;
+                        break;
+                    }
+                    long match = scanner.match(input, pos, input.length());
+                    if (match < 0) {
+                        pos++;
+                        continue;
+                    }
+                    int end = (int) match;
+                    sink.token((int) (match >>> 32), pos, end);
+                    pos = end;
+                }
+                if (first < 0) {
+                    resume = pos;
+                    continue;
+                }
+            }
+            for (int k = first; k < chunk.size; k++) {
+                sink.token(chunk.types[k], chunk.starts[k], chunk.ends[k]);
+            }
+            resume = chunk.endPos;
+        }
+    }
+
+    // Chunk boundaries: 0, then the position just after the first newline at or beyond
+    // each multiple of chunkSize, then the input length.
+    private int[] cuts(CharSequence input) {
+        int length = input.length();
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        int pos = chunkSize;
+        while (pos < length) {
+            while (pos < length && input.charAt(pos - 1) != '\n') pos++;
+            if (pos >= length) break;
+            cuts.add(pos);
+            pos += chunkSize;
+        }
+        cuts.add(length);
+        int[] result = new int[cuts.size()];
+        for (int i = 0; i < result.length; i++) result[i] = cuts.get(i);
+        return result;
+    }
+
+    // Tokens found by one speculative chunk scan.
+    private static class Chunk implements DFAScanner.TokenSink {
+        int[] types = new int[256];
+        int[] starts = new int[256];
+        int[] ends = new int[256];
+        int size;
+        int endPos;
+
+        @Override
+        public void token(int type, int start, int end) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            types[size] = type;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+}
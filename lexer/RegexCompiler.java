@@ -0,0 +1,403 @@
+package lexer;
+
+import dfa.CharRange;
+import dfa.CompiledDFA;
+import dfa.DFAMinimizer;
+import nfa.NFA;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Compiles regexes in the project's own syntax to immutable CompiledDFAs.
+// Supported: literals, \ escapes, [...] classes with ranges and ^, ( ), |, *, +, ? and
+// counted repetition {m}, {m,} and {m,n}. The parsing functions are pure and a
+// RegexCompiler keeps no state besides its cache, so one instance can be shared by any
+// number of threads. The cache is keyed by regex and options and evicts the least
+// recently used entry when full. A pattern requested by several threads at once is
+// compiled once and the others wait for that result.
+public final class RegexCompiler {
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    public enum Option {
+        CASE_INSENSITIVE,   // ASCII letters match either case
+        NO_MINIMIZE         // skip DFA minimization
+    }
+
+    private final int cacheSize;
+    private final LinkedHashMap<Key, FutureTask<CompiledDFA>> cache;
+
+    public RegexCompiler() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public RegexCompiler(int cacheSize) {
+        if (cacheSize < 1) throw new IllegalArgumentException("cacheSize must be positive");
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<Key, FutureTask<CompiledDFA>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<CompiledDFA>> eldest) {
+                return size() > RegexCompiler.this.cacheSize;
+            }
+        };
+    }
+
+    // The compiled DFA for the regex, from the cache if it has been compiled before.
+    // Throws IllegalArgumentException if the regex is malformed.
+    public CompiledDFA compile(String regex, Option... options) {
+        Set<Option> set = options.length == 0 ? EnumSet.noneOf(Option.class) : EnumSet.copyOf(Arrays.asList(options));
+        Key key = new Key(regex, set);
+        FutureTask<CompiledDFA> task;
+        boolean owner = false;
+        synchronized (cache) {
+            task = cache.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> compileUncached(regex, set));
+                cache.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner) task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                cache.remove(key, task);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + regex, e);
+        }
+    }
+
+    // Number of patterns currently cached.
+    public int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    // Compile without touching the cache.
+    public static CompiledDFA compileUncached(String regex, Set<Option> options) {
+        NFA nfa = buildNFA(toPostfix(insertConcatenation(regex)), options);
+        CompiledDFA dfa = CompiledDFA.compile(NFABuilder.convertToDFA(nfa));
+        return options.contains(Option.NO_MINIMIZE) ? dfa : DFAMinimizer.minimize(dfa);
+    }
+
+    private static final class Key {
+        final String regex;
+        final Set<Option> options;
+
+        Key(String regex, Set<Option> options) {
+            this.regex = regex;
+            this.options = options;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return regex.equals(other.regex) && options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return regex.hashCode() * 31 + options.hashCode();
+        }
+    }
+
+    // Make concatenation explicit by inserting '·' between adjacent operands.
+    public static String insertConcatenation(String regex) {
+        StringBuilder sb = new StringBuilder();
+        boolean inBracket = false; // Track if we're inside a character class (e.g., [a-z])
+        boolean escape = false; // Track if the current character is escaped
+        boolean previousEscaped = false; // Track if the previous character was escaped
+
+        for (int i = 0; i < regex.length(); i++) {
+            char current = regex.charAt(i);
+
+            if (escape) {
+                // If the current character is escaped, append it and reset the escape flag
+                sb.append(current);
+                escape = false;
+                previousEscaped = true;
+                continue;
+            }
+
+            if (!inBracket && current == '{' && braceEnd(regex, i) > 0) {
+                // A counted repetition {m,n} is a quantifier: copy it through whole
+                int close = braceEnd(regex, i);
+                sb.append(regex, i, close + 1);
+                i = close;
+                continue;
+            }
+
+            if (i > 0 && !inBracket) {
+                // An escaped character counts as a literal
+                char previous = previousEscaped ? 'a' : regex.charAt(i - 1);
+
+                // Check if we need to insert a concatenation operator
+                if (shouldConcatenate(previous, current)) {
+                    sb.append('·');
+                }
+            }
+            previousEscaped = false;
+
+            if (current == '\\') {
+                // If the current character is a backslash, set the escape flag
+                sb.append(current);
+                escape = true;
+                continue;
+            }
+
+            if (current == '[') {
+                // If we encounter an opening bracket, mark that we're inside a character class
+                inBracket = true;
+            } else if (current == ']') {
+                // If we encounter a closing bracket, mark that we're outside a character class
+                inBracket = false;
+            }
+
+            sb.append(current);
+        }
+
+        return sb.toString();
+    }
+
+    private static boolean shouldConcatenate(char previous, char current) {
+        // Cases where concatenation should be inserted:
+        // 1. Between two literals (e.g., 'a' and 'b' in "ab")
+        // 2. Between a literal and an opening parenthesis (e.g., 'a' and '(' in "a(")
+        // 3. Between a closing parenthesis and a literal (e.g., ')' and 'a' in ")a")
+        // 4. Between a quantifier (*, +, ?) and a literal or opening parenthesis
+        // 5. Between a closing bracket and a literal or opening parenthesis
+        // A character class ([...]) opens like a parenthesis.
+
+        boolean isPreviousLiteral = isLiteral(previous);
+        boolean isCurrentLiteral = isLiteral(current);
+
+        boolean isPreviousQuantifier = isQuantifier(previous);
+        boolean isPreviousClosingBracket = previous == ']';
+        boolean isPreviousClosingParenthesis = previous == ')';
+
+        boolean isCurrentOpeningParenthesis = current == '(' || current == '[';
+
+        return (isPreviousLiteral && isCurrentLiteral) ||
+               (isPreviousLiteral && isCurrentOpeningParenthesis) ||
+               (isPreviousClosingParenthesis && isCurrentLiteral) ||
+               (isPreviousClosingParenthesis && isCurrentOpeningParenthesis) ||
+               (isPreviousQuantifier && isCurrentLiteral) ||
+               (isPreviousQuantifier && isCurrentOpeningParenthesis) ||
+               (isPreviousClosingBracket && isCurrentLiteral) ||
+               (isPreviousClosingBracket && isCurrentOpeningParenthesis);
+    }
+
+    private static boolean isLiteral(char c) {
+        // A character is a literal if it's not an operator, parenthesis, or bracket
+        return !isOperator(c) && c != '(' && c != ')' && c != '[' && c != ']';
+    }
+
+    private static boolean isQuantifier(char c) {
+        // Quantifiers in regex: *, +, ?
+        return c == '*' || c == '+' || c == '?';
+    }
+
+    // Convert a regex with explicit concatenation to postfix (shunting-yard).
+    public static String toPostfix(String regex) {
+        StringBuilder output = new StringBuilder();
+        Stack<Character> stack = new Stack<>();
+        boolean escape = false;
+        
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (escape) {
+                output.append('\\').append(c);
+                escape = false;
+                continue;
+            }
+            if (c == '\\') {
+                escape = true;
+                continue;
+            }
+            if (c == '[') {
+                // A character class is a single operand: copy it through whole
+                int close = classEnd(regex, i);
+                output.append(regex, i, close + 1);
+                i = close;
+            } else if (c == '{' && braceEnd(regex, i) > 0) {
+                // {m,n} binds as tightly as the other quantifiers: it applies to the operand
+                // just output, after any quantifier still waiting on the stack
+                while (!stack.isEmpty() && isQuantifier(stack.peek())) {
+                    output.append(stack.pop());
+                }
+                int close = braceEnd(regex, i);
+                output.append(regex, i, close + 1);
+                i = close;
+            } else if (c == '(') {
+                stack.push(c);
+            } else if (c == ')') {
+                while (!stack.isEmpty() && stack.peek() != '(') {
+                    output.append(stack.pop());
+                }
+                if (stack.isEmpty()) {
+                    throw new IllegalArgumentException("Mismatched parentheses in regex");
+                }
+                stack.pop(); // pop '('
+            } else if (isOperator(c)) {
+                while (!stack.isEmpty() && precedence(c) <= precedence(stack.peek())) {
+                    output.append(stack.pop());
+                }
+                stack.push(c);
+            } else {
+                output.append(c);
+            }
+        }
+        while (!stack.isEmpty()) {
+            if (stack.peek() == '(') {
+                throw new IllegalArgumentException("Mismatched parentheses in regex");
+            }
+            output.append(stack.pop());
+        }
+        return output.toString();
+    }
+
+    private static int precedence(char op) {
+        switch (op) {
+            case '|': return 1;
+            case '·': return 2;
+            case '*': case '+': case '?': return 3;
+            default: return 0;
+        }
+    }
+
+    private static boolean isOperator(char c) {
+        return c == '|' || c == '·' || c == '*' || c == '+' || c == '?';
+    }
+
+    // Thompson-construct the NFA for a postfix regex.
+    public static NFA buildNFA(String postfix, Set<Option> options) {
+        boolean foldCase = options.contains(Option.CASE_INSENSITIVE);
+        Stack<NFA> stack = new Stack<>();
+        try {
+            for (int i = 0; i < postfix.length(); i++) {
+                char c = postfix.charAt(i);
+                if (c == '|') {
+                    NFA right = stack.pop();
+                    NFA left = stack.pop();
+                    stack.push(NFABuilder.union(left, right));
+                } else if (c == '·') {
+                    NFA right = stack.pop();
+                    NFA left = stack.pop();
+                    stack.push(NFABuilder.concatenate(left, right));
+                } else if (c == '*' || c == '+' || c == '?') {
+                    NFA nfa = stack.pop();
+                    stack.push(NFABuilder.applyClosure(nfa, c));
+                } else if (c == '\\') {
+                    stack.push(literal(postfix.charAt(++i), foldCase));
+                } else if (c == '[') {
+                    int close = classEnd(postfix, i);
+                    stack.push(buildCharClass(postfix.substring(i + 1, close), foldCase));
+                    i = close;
+                } else if (c == '{' && braceEnd(postfix, i) > 0) {
+                    int close = braceEnd(postfix, i);
+                    String[] bounds = postfix.substring(i + 1, close).split(",", -1);
+                    int min = Integer.parseInt(bounds[0]);
+                    int max = bounds.length == 1 ? min : bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+                    stack.push(NFABuilder.repeat(stack.pop(), min, max));
+                    i = close;
+                } else {
+                    stack.push(literal(c, foldCase));
+                }
+            }
+        } catch (EmptyStackException e) {
+            throw new IllegalArgumentException("Operator without operand in regex");
+        }
+        if (stack.size() != 1) {
+            throw new IllegalArgumentException("Malformed regex: " + stack.size() + " operands left");
+        }
+        return stack.pop();
+    }
+
+    // A literal character; with case folding a letter matches either case.
+    private static NFA literal(char c, boolean foldCase) {
+        char lower = Character.toLowerCase(c);
+        char upper = Character.toUpperCase(c);
+        if (!foldCase || lower == upper) {
+            return NFABuilder.createBasicNFA(c);
+        }
+        return NFABuilder.createCharSet("" + lower + upper);
+    }
+
+    // Index of the '}' that closes a counted repetition {m}, {m,} or {m,n} opened at
+    // regex[open], or -1 if the brace does not start one (and is then a literal).
+    private static int braceEnd(String regex, int open) {
+        int i = open + 1;
+        int digits = 0;
+        while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (digits == 0 || i == regex.length()) return -1;
+        if (regex.charAt(i) == ',') {
+            i++;
+            while (i < regex.length() && Character.isDigit(regex.charAt(i))) i++;
+        }
+        return i < regex.length() && regex.charAt(i) == '}' ? i : -1;
+    }
+
+    // Index of the ']' that closes the character class opened at regex[open].
+    private static int classEnd(String regex, int open) {
+        for (int i = open + 1; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated character class in regex");
+    }
+
+    // Build the NFA for the body of a [...] class. Each character or a-z range becomes a
+    // single range edge however wide it is; a leading ^ negates the class. Case folding
+    // adds the other case of any ASCII letters in the class.
+    private static NFA buildCharClass(String body, boolean foldCase) {
+        boolean negate = body.startsWith("^");
+        List<CharRange> ranges = new ArrayList<>();
+        for (int i = negate ? 1 : 0; i < body.length(); i++) {
+            char low = body.charAt(i);
+            if (low == '\\' && i + 1 < body.length()) {
+                low = body.charAt(++i);
+            }
+            char high = low;
+            if (i + 2 < body.length() && body.charAt(i + 1) == '-') {
+                high = body.charAt(i + 2);
+                i += 2;
+            }
+            ranges.add(new CharRange(low, high));
+        }
+        if (foldCase) {
+            for (CharRange range : new ArrayList<>(ranges)) {
+                addShifted(ranges, range, 'a', 'z', 'A' - 'a');
+                addShifted(ranges, range, 'A', 'Z', 'a' - 'A');
+            }
+        }
+        if (negate) {
+            return NFABuilder.createCharClass(c -> ranges.stream().noneMatch(r -> r.contains((char) c)));
+        }
+        return NFABuilder.createCharClass(ranges);
+    }
+
+    // Add the part of range that lies in [low, high], moved by shift.
+    private static void addShifted(List<CharRange> ranges, CharRange range, char low, char high, int shift) {
+        int from = Math.max(range.low, low);
+        int to = Math.min(range.high, high);
+        if (from <= to) {
+            ranges.add(new CharRange((char) (from + shift), (char) (to + shift)));
+        }
+    }
+}
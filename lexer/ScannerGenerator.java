@@ -0,0 +1,346 @@
+package lexer;
+
+import dfa.CompiledDFA;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns a CompiledDFA into a scanner class of its own, so the scan loop does no table
+// lookups: each state is a case of one switch, its transitions are range checks on the
+// character (or a switch over ASCII when there are many), a state's loop on itself is a
+// tight while loop, and accepting types are constants. The class is written as Java
+// source, compiled in memory with the system Java compiler against the class path, or
+// as part of module CC_A1 when that runs from the module path, and defined as a hidden
+// class in this package, so the JIT treats it like any other code. Generation fails (and
+// DFAScanner keeps interpreting the tables) when there is no compiler in the runtime, or
+// when the class comes out too big for the JIT to compile.
+final class ScannerGenerator {
+    private static final String NAME = "GeneratedScanner";
+    private static final int SWITCH_TARGETS = 4;    // switch over ASCII from this many targets
+    private static final int MAX_CLASS_BYTES = 16_000;  // two scan methods under HugeMethodLimit
+
+    // The scan loops of one DFA, with the contract of DFAScanner's scan methods.
+    interface Kernel {
+        int scan(CharSequence input, int from, int stop, int limit, DFAScanner.TokenSink sink);
+
+        void scan(ByteBuffer input, int from, int to, DFAScanner.TokenSink sink);
+    }
+
+    private ScannerGenerator() {
+    }
+
+    // The generated scanner for dfa, or null (after saying why on stderr) if it cannot
+    // be generated.
+    static Kernel generate(CompiledDFA dfa) {
+        try {
+            byte[] bytes = Javac.compile(source(dfa));
+            if (bytes.length > MAX_CLASS_BYTES) {
+                throw new IllegalStateException(bytes.length + " bytes of class file is too big to JIT-compile");
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Kernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            System.err.println("Cannot generate scanner: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // The Java source of the scanner for dfa.
+    static String source(CompiledDFA dfa) {
+        List<int[]> classRanges = classRanges(dfa);
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        sb.append("package lexer;\n\n");
+        sb.append("import java.nio.ByteBuffer;\n");
+        sb.append("import metrics.Metrics;\n\n");
+        sb.append("// Generated by ScannerGenerator from a DFA with ").append(dfa.stateCount()).append(" states.\n");
+        sb.append("final class ").append(NAME).append(" implements ScannerGenerator.Kernel {\n");
+        scanMethod(sb, dfa, classRanges, false);
+        sb.append('\n');
+        scanMethod(sb, dfa, classRanges, true);
+        sb.append('\n');
+        skipsMethod(sb, dfa);
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    // The chars [lo, hi] sharing a character class, covering all chars in order.
+    private static List<int[]> classRanges(CompiledDFA dfa) {
+        List<int[]> ranges = new ArrayList<>();
+        int lo = 0;
+        int cls = dfa.classOf((char) 0);
+        for (int c = 1; c <= Character.MAX_VALUE; c++) {
+            int next = dfa.classOf((char) c);
+            if (next != cls) {
+                ranges.add(new int[]{lo, c - 1});
+                lo = c;
+                cls = next;
+            }
+        }
+        ranges.add(new int[]{lo, Character.MAX_VALUE});
+        return ranges;
+    }
+
+    // The transitions out of state, as target -> ranges [lo, hi] of the chars that take
+    // it there, adjacent ranges merged. Byte scanners step bytes as CompiledDFA.stepByte.
+    private static Map<Integer, List<int[]>> transitions(CompiledDFA dfa, List<int[]> classRanges, int state,
+                                                         boolean bytes) {
+        Map<Integer, List<int[]>> targets = new LinkedHashMap<>();
+        for (int[] range : bytes ? byteRanges() : classRanges) {
+            int target = bytes ? dfa.stepByte(state, range[0]) : dfa.step(state, (char) range[0]);
+            if (target == CompiledDFA.DEAD) continue;
+            List<int[]> list = targets.computeIfAbsent(target, t -> new ArrayList<>());
+            int[] last = list.isEmpty() ? null : list.get(list.size() - 1);
+            if (last != null && last[1] + 1 == range[0]) {
+                last[1] = range[1];
+            } else {
+                list.add(new int[]{range[0], range[1]});
+            }
+        }
+        return targets;
+    }
+
+    // Every byte as a range of its own; transitions() merges them.
+    private static List<int[]> byteRanges() {
+        List<int[]> ranges = new ArrayList<>(256);
+        for (int b = 0; b < 256; b++) ranges.add(new int[]{b, b});
+        return ranges;
+    }
+
+    private static void scanMethod(StringBuilder sb, CompiledDFA dfa, List<int[]> classRanges, boolean bytes) {
+        String read = bytes ? "input.get(i++) & 0xFF" : "input.charAt(i++)";
+        if (bytes) {
+            sb.append("    @Override\n");
+            sb.append("    public void scan(ByteBuffer input, int from, int limit, DFAScanner.TokenSink sink) {\n");
+            sb.append("        int stop = limit;\n");
+        } else {
+            sb.append("    @Override\n");
+            sb.append("    public int scan(CharSequence input, int from, int stop, int limit, DFAScanner.TokenSink sink) {\n");
+        }
+        sb.append("        long transitions = 0;\n");
+        sb.append("        int pos = from;\n");
+        sb.append("        int c;\n");
+        sb.append("        while (pos < stop) {\n");
+        sb.append("            c = ").append(bytes ? "input.get(pos) & 0xFF" : "input.charAt(pos)").append(";\n");
+        sb.append("            if (skips(c)) {\n");
+        sb.append("                pos++;\n");
+        sb.append("                transitions++;\n");
+        sb.append("                continue;\n");
+        sb.append("            }\n");
+        sb.append("            int state = ").append(dfa.start()).append(";\n");
+        sb.append("            int lastEnd = -1;\n");
+        sb.append("            int lastType = -1;\n");
+        sb.append("            int i = pos;\n");
+        sb.append("            dfa:\n");
+        sb.append("            for (;;) {\n");
+        sb.append("                switch (state) {\n");
+        for (int s = 0; s < dfa.stateCount(); s++) {
+            Map<Integer, List<int[]>> targets = transitions(dfa, classRanges, s, bytes);
+            sb.append("                    case ").append(s).append(": {\n");
+            String in = "                        ";
+            List<int[]> self = targets.remove(s);
+            if (self != null) {
+                sb.append(in).append("while (i < limit) {\n");
+                sb.append(in).append("    c = ").append(bytes ? "input.get(i) & 0xFF" : "input.charAt(i)").append(";\n");
+                sb.append(in).append("    if (!(").append(ranges(self, bytes)).append(")) break;\n");
+                sb.append(in).append("    i++;\n");
+                sb.append(in).append("}\n");
+            }
+            int type = dfa.acceptType(s);
+            if (type >= 0) {
+                if (s == dfa.start()) {
+                    // Only once a char has been read; there are no empty tokens.
+                    sb.append(in).append("if (i > pos) { lastEnd = i; lastType = ").append(type).append("; }\n");
+                } else {
+                    sb.append(in).append("lastEnd = i;\n");
+                    sb.append(in).append("lastType = ").append(type).append(";\n");
+                }
+            }
+            if (targets.isEmpty()) {
+                // Any further char is dead; it still counts as a transition.
+                sb.append(in).append("if (i < limit) i++;\n");
+                sb.append(in).append("break dfa;\n");
+                sb.append("                    }\n");
+                continue;
+            }
+            sb.append(in).append("if (i == limit) break dfa;\n");
+            sb.append(in).append("c = ").append(read).append(";\n");
+            if (targets.size() >= SWITCH_TARGETS) {
+                asciiSwitch(sb, targets, in, bytes);
+            } else {
+                for (Map.Entry<Integer, List<int[]>> target : targets.entrySet()) {
+                    sb.append(in).append("if (").append(ranges(target.getValue(), bytes)).append(") { state = ")
+                            .append(target.getKey()).append("; continue dfa; }\n");
+                }
+            }
+            sb.append(in).append("break dfa;\n");
+            sb.append("                    }\n");
+        }
+        sb.append("                    default:\n");
+        sb.append("                        throw new AssertionError(state);\n");
+        sb.append("                }\n");
+        sb.append("            }\n");
+        sb.append("            transitions += i - pos;\n");
+        sb.append("            if (lastEnd < 0) {\n");
+        sb.append("                pos++;\n");
+        sb.append("                continue;\n");
+        sb.append("            }\n");
+        sb.append("            sink.token(lastType, pos, lastEnd);\n");
+        sb.append("            pos = lastEnd;\n");
+        sb.append("        }\n");
+        sb.append("        Metrics.transitions(transitions);\n");
+        if (!bytes) sb.append("        return pos;\n");
+        sb.append("    }\n");
+    }
+
+    // A switch over the ASCII chars, then range checks for the rest.
+    private static void asciiSwitch(StringBuilder sb, Map<Integer, List<int[]>> targets, String in, boolean bytes) {
+        Map<Integer, String> labels = new LinkedHashMap<>();
+        Map<Integer, List<int[]>> wide = new LinkedHashMap<>();
+        for (Map.Entry<Integer, List<int[]>> target : targets.entrySet()) {
+            StringBuilder cases = new StringBuilder();
+            for (int[] range : target.getValue()) {
+                for (int c = range[0]; c <= Math.min(range[1], 127); c++) {
+                    cases.append(cases.length() == 0 ? "" : " ").append("case ").append(c).append(':');
+                }
+                if (range[1] >= 128) {
+                    wide.computeIfAbsent(target.getKey(), t -> new ArrayList<>())
+                            .add(new int[]{Math.max(range[0], 128), range[1]});
+                }
+            }
+            if (cases.length() > 0) labels.put(target.getKey(), cases.toString());
+        }
+        String inSwitch = wide.isEmpty() ? in : in + "    ";
+        if (!wide.isEmpty()) sb.append(in).append("if (c < 128) {\n");
+        sb.append(inSwitch).append("switch (c) {\n");
+        for (Map.Entry<Integer, String> target : labels.entrySet()) {
+            sb.append(inSwitch).append("    ").append(target.getValue()).append('\n');
+            sb.append(inSwitch).append("        state = ").append(target.getKey()).append(";\n");
+            sb.append(inSwitch).append("        continue dfa;\n");
+        }
+        sb.append(inSwitch).append("}\n");
+        if (wide.isEmpty()) return;
+        sb.append(inSwitch).append("break dfa;\n");
+        sb.append(in).append("}\n");
+        for (Map.Entry<Integer, List<int[]>> target : wide.entrySet()) {
+            sb.append(in).append("if (").append(ranges(target.getValue(), bytes)).append(") { state = ")
+                    .append(target.getKey()).append("; continue dfa; }\n");
+        }
+    }
+
+    // A boolean expression testing whether c is in one of the ranges.
+    private static String ranges(List<int[]> ranges, boolean bytes) {
+        int max = bytes ? 255 : Character.MAX_VALUE;
+        StringBuilder sb = new StringBuilder();
+        for (int[] range : ranges) {
+            int lo = range[0];
+            int hi = range[1];
+            if (sb.length() > 0) sb.append(" || ");
+            if (lo == 0 && hi == max) {
+                sb.append("true");
+            } else if (lo == hi) {
+                sb.append("c == ").append(lo);
+            } else if (lo == 0) {
+                sb.append("c <= ").append(hi);
+            } else if (hi == max) {
+                sb.append("c >= ").append(lo);
+            } else {
+                boolean alone = ranges.size() == 1;
+                sb.append(alone ? "" : "(").append("c >= ").append(lo).append(" && c <= ").append(hi).append(alone ? "" : ")");
+            }
+        }
+        return sb.toString();
+    }
+
+    // skips(c): whether c is an ASCII char that starts no token, as two 64-bit masks.
+    private static void skipsMethod(StringBuilder sb, CompiledDFA dfa) {
+        long low = 0;
+        long high = 0;
+        for (int c = 0; c < 128; c++) {
+            if (dfa.step(dfa.start(), (char) c) != CompiledDFA.DEAD) continue;
+            if (c < 64) low |= 1L << c;
+            else high |= 1L << (c - 64);
+        }
+        sb.append("    private static boolean skips(int c) {\n");
+        sb.append("        return c < 64 ? (0x").append(Long.toHexString(low)).append("L >>> c & 1) != 0\n");
+        sb.append("                : c < 128 && (0x").append(Long.toHexString(high)).append("L >>> (c - 64) & 1) != 0;\n");
+        sb.append("    }\n");
+    }
+
+    // The system Java compiler, in a class of its own so that a runtime without the
+    // java.compiler module fails on loading it inside generate() rather than on loading
+    // ScannerGenerator.
+    private static final class Javac {
+        // Compile the source of NAME in memory and return its class file.
+        static byte[] compile(String source) {
+            JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+            if (javac == null) throw new IllegalStateException("no Java compiler in this runtime");
+            ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+            JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(
+                    javac.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+                @Override
+                public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                           FileObject sibling) {
+                    return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension),
+                            kind) {
+                        @Override
+                        public OutputStream openOutputStream() {
+                            return classFile;
+                        }
+                    };
+                }
+            };
+            JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///lexer/" + NAME + ".java"),
+                    JavaFileObject.Kind.SOURCE) {
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return source;
+                }
+            };
+            Module module = ScannerGenerator.class.getModule();
+            List<String> options = new ArrayList<>(List.of("-g:none", "-proc:none"));
+            if (module.isNamed()) {
+                // Run from the module path: compile the class as a patch to our own module, so
+                // it sees the package-private types it uses and the packages the module reads.
+                String location = module.getLayer().configuration().findModule(module.getName())
+                        .flatMap(m -> m.reference().location()).map(Path::of).map(Path::toString)
+                        .orElseThrow(() -> new IllegalStateException("no location for module " + module.getName()));
+                options.addAll(List.of("--module-path", System.getProperty("jdk.module.path", location),
+                        "--patch-module", module.getName() + "=" + location));
+                files = new ForwardingJavaFileManager<JavaFileManager>(files) {
+                    // The unit has no path that javac could place in the patch by itself.
+                    @Override
+                    public Location getLocationForModule(Location location, JavaFileObject fo) throws IOException {
+                        return fo == unit ? getLocationForModule(location, module.getName())
+                                : super.getLocationForModule(location, fo);
+                    }
+                };
+            } else {
+                options.addAll(List.of("-classpath", System.getProperty("java.class.path")));
+            }
+            StringWriter log = new StringWriter();
+            if (!javac.getTask(log, files, null, options, null, List.of(unit)).call()) {
+                throw new IllegalStateException("compiling the generated source failed:\n" + log);
+            }
+            return classFile.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package lexer;
+
+import dfa.CompiledDFA;
+import dfa.DFATableFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Ahead-of-time tables for the lexer's automata: the scanner DFA, the token classifier
+// of TokenDFABuilder and the token validator of Main.
+// `java lexer.ScannerTables [file]` writes the finished, minimized automata to a table
+// file. Runs started with -Dlexer.tables=<file> then load them instead of going through
+// Thompson construction, subset construction and minimization. The file carries a
+// fingerprint of the code that builds the automata (see fingerprint()): after a change to
+// the grammar or its construction it no longer matches, and the tables are rebuilt and
+// written back.
+public final class ScannerTables {
+    public static final String PROPERTY = "lexer.tables";
+    public static final String DEFAULT_FILE = "scanner.dfa";
+
+    // The classes whose code decides what the tables hold, nested classes included: these
+    // of lexer (the NFAs of the grammar, the validator's regex compiler and the token
+    // types), and all of nfa and dfa, which take an NFA to a CompiledDFA.
+    private static final String[] PACKAGES = {"lexer", "nfa", "dfa"};
+    private static final String[] LEXER_BUILDERS = {"TokenDFABuilder", "NFABuilder", "RegexCompiler", "TokenType"};
+
+    // The automata a table file holds, in file order.
+    public enum Table {
+        SCANNER,        // TokenDFABuilder.buildScannerNFAs, driving DFAScanner
+        CLASSIFIER,     // TokenDFABuilder.buildTokenNFAs, for classifyToken
+        VALIDATOR       // Lexer.SIMPLIFIED_REGEX through RegexCompiler, for Main
+    }
+
+    private ScannerTables() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_FILE);
+        long start = System.nanoTime();
+        List<CompiledDFA> dfas = buildAll();
+        long built = System.nanoTime();
+        DFATableFile.write(file, dfas, fingerprint());
+        // The first load pays for loading the file I/O classes; the second is what the
+        // tables themselves cost.
+        long[] load = new long[2];
+        for (int i = 0; i < load.length; i++) {
+            long loadStart = System.nanoTime();
+            DFATableFile.read(file, fingerprint());
+            load[i] = System.nanoTime() - loadStart;
+        }
+        System.out.printf("Wrote %s (build %.1f ms, load %d us cold, %d us warm)%n",
+                file, (built - start) / 1e6, load[0] / 1000, load[1] / 1000);
+        for (Table table : Table.values()) {
+            CompiledDFA dfa = dfas.get(table.ordinal());
+            System.out.printf("  %-10s %4d states, %3d classes%n", table, dfa.stateCount(), dfa.classCount());
+        }
+    }
+
+    // Whether runs load their automata from a table file (the lexer.tables property).
+    public static boolean enabled() {
+        return System.getProperty(PROPERTY) != null;
+    }
+
+    // The scanner DFA, loaded from the table file named by the lexer.tables property if
+    // there is one, otherwise built from scratch.
+    public static CompiledDFA scannerDFA() {
+        return get(Table.SCANNER);
+    }
+
+    // As above, for the token classifier.
+    public static CompiledDFA classifierDFA() {
+        return get(Table.CLASSIFIER);
+    }
+
+    // As above, for Main's validator.
+    public static CompiledDFA validatorDFA() {
+        return get(Table.VALIDATOR);
+    }
+
+    public static CompiledDFA get(Table table) {
+        return enabled() ? Loaded.DFAS.get(table.ordinal()) : build(table);
+    }
+
+    // The file named by the property, read once on first use.
+    private static class Loaded {
+        static final List<CompiledDFA> DFAS = load(Paths.get(System.getProperty(PROPERTY)));
+    }
+
+    // Load every table from a table file, rebuilding them (and rewriting the file) if the
+    // file is missing, damaged or was built from another grammar.
+    public static List<CompiledDFA> load(Path file) {
+        long fingerprint = fingerprint();
+        try {
+            List<CompiledDFA> dfas = DFATableFile.read(file, fingerprint);
+            if (dfas != null && dfas.size() == Table.values().length) return dfas;
+        } catch (IOException e) {
+            System.err.println("Cannot read " + file + ": " + e.getMessage());
+        }
+        List<CompiledDFA> dfas = buildAll();
+        try {
+            DFATableFile.write(file, dfas, fingerprint);
+        } catch (IOException e) {
+            System.err.println("Cannot write " + file + ": " + e.getMessage());
+        }
+        return dfas;
+    }
+
+    private static List<CompiledDFA> buildAll() {
+        List<CompiledDFA> dfas = new ArrayList<>();
+        for (Table table : Table.values()) dfas.add(build(table));
+        return dfas;
+    }
+
+    // Build one automaton from scratch.
+    public static CompiledDFA build(Table table) {
+        switch (table) {
+            case SCANNER:
+                return TokenDFABuilder.buildScannerDFA();
+            case CLASSIFIER:
+                return TokenDFABuilder.buildClassifier(TokenDFABuilder.buildTokenNFAs());
+            case VALIDATOR:
+                return RegexCompiler.compileUncached(Lexer.SIMPLIFIED_REGEX, EnumSet.noneOf(RegexCompiler.Option.class));
+            default:
+                throw new AssertionError(table);
+        }
+    }
+
+    // 64-bit hash of the builder class files and of the regexes, which are constants
+    // compiled into their users. Any change to how the automata are built changes it, with
+    // nothing to remember to bump; a recompile by another javac may too, which only costs
+    // one rebuild. The class files are read straight from the directory or jar ScannerTables
+    // came from: about ten milliseconds on a cold JVM, against some two hundred to build the
+    // tables, and none of the builder classes is loaded.
+    public static long fingerprint() {
+        return Fingerprint.VALUE;
+    }
+
+    private static class Fingerprint {
+        static final long VALUE = compute();
+
+        static long compute() {
+            long h = mix(0xcbf29ce484222325L, Lexer.COMBINED_REGEX);
+            h = mix(h, Lexer.SIMPLIFIED_REGEX);
+            try {
+                return h + classFiles();
+            } catch (IOException | URISyntaxException | RuntimeException e) {
+                // The code cannot be vouched for, so match no table file: rebuild.
+                System.err.println("Cannot fingerprint the tables: " + e);
+                return h ^ System.nanoTime();
+            }
+        }
+
+        // The sum of the hashes of the builder class files, so the order they are listed
+        // in does not matter.
+        private static long classFiles() throws IOException, URISyntaxException {
+            CodeSource source = ScannerTables.class.getProtectionDomain().getCodeSource();
+            if (source == null) throw new IOException("no code source for ScannerTables");
+            Path root = Paths.get(source.getLocation().toURI());
+            long sum = 0;
+            if (Files.isDirectory(root)) {
+                for (String pkg : PACKAGES) {
+                    try (DirectoryStream<Path> files = Files.newDirectoryStream(root.resolve(pkg))) {
+                        for (Path file : files) {
+                            String name = file.getFileName().toString();
+                            if (isBuilder(pkg, name)) sum += hash(pkg, name, Files.readAllBytes(file));
+                        }
+                    }
+                }
+                return sum;
+            }
+            try (ZipFile jar = new ZipFile(root.toFile())) {
+                for (Enumeration<? extends ZipEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                    ZipEntry entry = entries.nextElement();
+                    String path = entry.getName();
+                    int slash = path.indexOf('/');
+                    if (slash < 0 || path.indexOf('/', slash + 1) >= 0) continue;
+                    String pkg = path.substring(0, slash);
+                    String name = path.substring(slash + 1);
+                    if (!isBuilder(pkg, name)) continue;
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        sum += hash(pkg, name, in.readAllBytes());
+                    }
+                }
+            }
+            return sum;
+        }
+
+        private static boolean isBuilder(String pkg, String name) {
+            if (!name.endsWith(".class")) return false;
+            if (!pkg.equals("lexer")) return pkg.equals("nfa") || pkg.equals("dfa");
+            for (String builder : LEXER_BUILDERS) {
+                if (!name.startsWith(builder)) continue;
+                char next = name.charAt(builder.length());
+                if (next == '.' || next == '$') return true;
+            }
+            return false;
+        }
+
+        private static long hash(String pkg, String name, byte[] classFile) {
+            CRC32 crc = new CRC32();
+            crc.update(classFile);
+            return mix(mix(mix(0xcbf29ce484222325L, pkg), name), (int) crc.getValue());
+        }
+    }
+
+    private static long mix(long h, String s) {
+        h = mix(h, s.length());
+        for (int i = 0; i < s.length(); i++) h = mix(h, s.charAt(i));
+        return h;
+    }
+
+    private static long mix(long h, int value) {
+        h = (h ^ value) * 0x100000001b3L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,140 @@
+package lexer;
+
+import errorHandler.Diagnostic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The statements of an IncrementalCompiler source in order, as a gap buffer with the gap
+// at the last edit. Each statement knows its slot, so its index and the offset of its text
+// take O(1) to find however many statements come before it, and two statements compare in
+// O(1). As with IncrementalLexer's tokens, the statements after the gap store their start
+// relative to the end of the text, so an edit shifts them without touching them.
+final class StatementList {
+
+    // Cached results for the tokens of one statement: those up to and including the token
+    // IncrementalCompiler.endsStatement picked, or the rest of the source for the last one.
+    static final class Statement {
+        final int length;           // characters, up to the end of its last token
+        final List<IncrementalCompiler.Placed> diagnostics;     // ErrorHandler's, but SIMILAR_NAME
+        final List<NameLog.Assignment> assignments;
+        final List<SymbolLog.Action> actions;
+        final IncrementalCompiler.Checkpoint checkpoint;   // just after it; null for the last
+        SymbolIndex.Scope scope;    // the innermost scope open just after it
+        private int slot = -1;      // -1 once removed
+        private int start;          // absolute before the gap, minus text length after it
+
+        Statement(int length, List<Diagnostic> diagnostics, List<NameLog.Assignment> assignments,
+                  List<SymbolLog.Action> actions, IncrementalCompiler.Checkpoint checkpoint) {
+            this.length = length;
+            List<IncrementalCompiler.Placed> placed = diagnostics.isEmpty() ? List.of() : new ArrayList<>();
+            for (int i = 0; i < diagnostics.size(); i++) {
+                placed.add(new IncrementalCompiler.Placed(this, diagnostics.get(i), i));
+            }
+            this.diagnostics = placed;
+            this.assignments = assignments;
+            this.actions = actions;
+            this.checkpoint = checkpoint;
+        }
+
+        boolean removed() {
+            return slot < 0;
+        }
+    }
+
+    private final CharSequence text;
+    private Statement[] items = new Statement[64];
+    private int gapStart = 0;
+    private int gapEnd = 64;
+
+    StatementList(CharSequence text) {
+        this.text = text;
+    }
+
+    int size() {
+        return items.length - (gapEnd - gapStart);
+    }
+
+    Statement get(int i) {
+        return items[i < gapStart ? i : i + (gapEnd - gapStart)];
+    }
+
+    int index(Statement s) {
+        return s.slot < gapStart ? s.slot : s.slot - (gapEnd - gapStart);
+    }
+
+    int compare(Statement a, Statement b) {
+        return Integer.compare(index(a), index(b));
+    }
+
+    int start(Statement s) {
+        return s.slot < gapStart ? s.start : s.start + text.length();
+    }
+
+    int end(Statement s) {
+        return start(s) + s.length;
+    }
+
+    // Index of the statement whose text holds offset pos: the last one starting at or
+    // before it.
+    int find(int pos) {
+        int lo = 0;
+        int hi = size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(get(mid)) <= pos) lo = mid + 1;
+            else hi = mid;
+        }
+        return Math.max(lo - 1, 0);
+    }
+
+    // Move the gap to just before statement index. The offsets are converted with the
+    // current text length, so this must happen before the text is edited.
+    void moveGap(int index) {
+        int limit = text.length();
+        while (gapStart > index) {
+            Statement s = items[--gapStart];
+            items[gapStart] = null;
+            s.start -= limit;
+            s.slot = --gapEnd;
+            items[gapEnd] = s;
+        }
+        while (gapStart < index) {
+            Statement s = items[gapEnd];
+            items[gapEnd++] = null;
+            s.start += limit;
+            s.slot = gapStart;
+            items[gapStart++] = s;
+        }
+    }
+
+    // The statement just after the gap, or null at the end.
+    Statement next() {
+        return gapEnd < items.length ? items[gapEnd] : null;
+    }
+
+    void removeNext() {
+        items[gapEnd].slot = -1;
+        items[gapEnd++] = null;
+    }
+
+    // Insert s before the gap; its text starts at offset start of the current text.
+    void insert(Statement s, int start) {
+        if (gapStart == gapEnd) grow();
+        s.slot = gapStart;
+        s.start = start;
+        items[gapStart++] = s;
+    }
+
+    private void grow() {
+        int tail = items.length - gapEnd;
+        int capacity = items.length * 2;
+        Statement[] bigger = Arrays.copyOf(items, capacity);
+        System.arraycopy(items, gapEnd, bigger, capacity - tail, tail);
+        Arrays.fill(bigger, gapEnd, capacity - tail, null);
+        for (int i = capacity - tail; i < capacity; i++) bigger[i].slot = i;
+        items = bigger;
+        gapEnd = capacity - tail;
+    }
+}
@@ -6,6 +6,9 @@ class Symbol {
     String type;
     String value;
     String scope;
+    int id;             // interned name id
+    int depth;          // scope nesting depth it was declared at
+    Symbol shadowed;    // outer symbol with the same name hidden by this one
 
     public Symbol(String name, String type, String value, String scope) {
         this.name = name;
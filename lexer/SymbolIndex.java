@@ -0,0 +1,411 @@
+package lexer;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// The symbols of an IncrementalCompiler source, kept up to date as statements are
+// replaced, along with a SymbolTable that shows them instead of replaying every call.
+// Each ADD or ASSIGN call SymbolLog recorded is resolved the way SymbolTable carries it
+// out: against the symbol the previous call to the same name left visible, or the one that
+// symbol shadows once its scope has closed. The calls to each name are kept in source
+// order for this. When statements are replaced, the new calls are resolved, and then the
+// later calls to each name involved, but only until one resolves as it did before with
+// the same symbols behind it; past that point the name's symbols are what they were.
+// A symbol or scope the edit only moved (dropped with the old statements and declared or
+// opened again by the new ones) keeps its old object, so the calls after the edit still
+// point at the right one and the search stops at the first of them. The table then only
+// needs the visible symbol of each name involved looked up again.
+final class SymbolIndex {
+
+    // Global, or the Local scope opened by an ENTER call.
+    static final class Scope {
+        Scope parent;
+        final int depth;
+        final String name;
+        SymbolLog.Action opener;            // null for Global
+        final Set<Decl> symbols = new HashSet<>();
+
+        Scope(Scope parent, String name, SymbolLog.Action opener) {
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.name = name;
+            this.opener = opener;
+        }
+
+        // Whether a call made in scope `at` can see the symbols of this one.
+        boolean encloses(Scope at) {
+            for (Scope s = at; s != null && s.depth >= depth; s = s.parent) {
+                if (s == this) return true;
+            }
+            return false;
+        }
+    }
+
+    // A symbol as SymbolTable would declare it.
+    static final class Decl {
+        final int id;
+        String type;
+        String scope;               // the scope name the declaring call gave
+        Scope home;                 // the scope it belongs to
+        Decl shadowed;
+        SymbolLog.Action creator;
+        SymbolLog.Action last;      // the last call that declared or updated it
+        final Symbol symbol;        // how the table shows it, brought up to date by show
+
+        Decl(SymbolLog.Action creator, Decl shadowed, String name) {
+            this.id = creator.id;
+            this.type = creator.kind == SymbolLog.ADD ? creator.type : "Unknown";
+            this.scope = creator.scope;
+            this.home = creator.in;
+            this.shadowed = shadowed;
+            this.creator = creator;
+            this.symbol = new Symbol(name, null, null, null);
+            this.symbol.id = id;
+        }
+
+        // What a resolution depends on, kept from before an edit changed it.
+        private Decl(Decl d) {
+            this.id = d.id;
+            this.home = d.home;
+            this.shadowed = d.shadowed;
+            this.symbol = null;
+        }
+    }
+
+    private final StatementList statements;
+    private final NamePool pool;
+    private final List<GapList<SymbolLog.Action>> calls = new ArrayList<>();   // by name id
+    private final GapList<Decl> declared = new GapList<>((a, b) -> compare(a.creator, b.creator));
+    private final Scope global = new Scope(null, "Global", null);
+    private final SymbolTable table;
+    private List<Scope> open = List.of();      // the scopes the table has open, innermost first
+
+    // What the current edit has done so far.
+    private final List<StatementList.Statement> added = new ArrayList<>();
+    private final List<SymbolLog.Action> resolved = new ArrayList<>();
+    private final Set<Decl> fresh = new HashSet<>();        // declared by a call resolved in it
+    private final Set<Decl> doomed = new HashSet<>();       // lost the call that declared them
+    private final Map<Decl, Decl> before = new HashMap<>(); // how changed symbols were
+    private final List<Decl> changed = new ArrayList<>();   // fresh and changed symbols
+    private final Set<Scope> opened = new HashSet<>();      // by the new statements
+    private final BitSet names = new BitSet();              // ids whose later calls may change
+    private Scope oldEnd;       // innermost scope open after the last removed statement
+
+    SymbolIndex(StatementList statements, NamePool pool) {
+        this.statements = statements;
+        this.pool = pool;
+        this.table = new SymbolTable(pool, new AbstractList<Symbol>() {
+            @Override
+            public Symbol get(int i) {
+                return show(declared.get(i));
+            }
+
+            @Override
+            public int size() {
+                return declared.size();
+            }
+        });
+    }
+
+    // The table SymbolTable would hold after all the calls. It follows the edits.
+    SymbolTable table() {
+        return table;
+    }
+
+    // Forget the calls of s, which is about to be removed from the list.
+    void remove(StatementList.Statement s) {
+        for (SymbolLog.Action a : s.actions) {
+            if (a.kind == SymbolLog.ENTER || a.kind == SymbolLog.EXIT) continue;
+            names.set(a.id);
+            if (a.declares) {
+                doom(a.target);
+            } else if (a.target.last == a && !doomed.contains(a.target)) {
+                a.target.last = previous(a, a.target);
+            }
+            calls(a.id).remove(a);
+        }
+        oldEnd = s.scope;
+    }
+
+    // Resolve the calls of s, which has just been inserted into the list.
+    void add(StatementList.Statement s) {
+        int index = statements.index(s);
+        Scope scope = index == 0 ? global : statements.get(index - 1).scope;
+        int ordinal = 0;
+        for (SymbolLog.Action a : s.actions) {
+            a.statement = s;
+            a.ordinal = ordinal++;
+            a.in = scope;
+            if (a.kind == SymbolLog.ENTER) {
+                scope = a.opened = new Scope(scope, a.scope, a);
+                opened.add(scope);
+            } else if (a.kind == SymbolLog.EXIT) {
+                scope = scope.parent;
+            } else {
+                names.set(a.id);
+                calls(a.id).add(a);
+                resolve(a);
+            }
+        }
+        s.scope = scope;
+        added.add(s);
+    }
+
+    // Bring the calls after the added statements up to date, once the statements they
+    // replace have been removed.
+    void settle() {
+        StatementList.Statement last = added.get(added.size() - 1);
+        int next = statements.index(last) + 1;
+        if (next < statements.size()) {
+            reconcile(oldEnd, last.scope, next);
+            SymbolLog.Action after = new SymbolLog.Action(-1, -1, null, null, null);
+            after.statement = last;
+            after.ordinal = Integer.MAX_VALUE;
+            for (int id = names.nextSetBit(0); id >= 0; id = names.nextSetBit(id + 1)) {
+                GapList<SymbolLog.Action> list = calls(id);
+                for (int i = list.rank(after), n = list.size(); i < n; i++) {
+                    if (resolve(list.get(i))) break;
+                }
+            }
+        }
+        for (Decl d : doomed) d.home.symbols.remove(d);
+        reopen(statements.get(statements.size() - 1).scope);
+        for (int id = names.nextSetBit(0); id >= 0; id = names.nextSetBit(id + 1)) {
+            table.show(id, visible(id));
+        }
+        added.clear();
+        resolved.clear();
+        fresh.clear();
+        doomed.clear();
+        before.clear();
+        changed.clear();
+        opened.clear();
+        names.clear();
+        oldEnd = null;
+    }
+
+    // Open the scopes up to end in the table, if they are not the ones it has open. The
+    // names declared in the scopes that open or close have new visible symbols.
+    private void reopen(Scope end) {
+        List<Scope> scopes = outward(end);
+        if (scopes.equals(open)) return;
+        for (Scope s : open) {
+            if (!scopes.contains(s)) for (Decl d : s.symbols) names.set(d.id);
+        }
+        for (Scope s : scopes) {
+            if (!open.contains(s)) for (Decl d : s.symbols) names.set(d.id);
+        }
+        while (table.depth() > 0) table.exitScope();
+        for (int i = scopes.size() - 1; i >= 0; i--) table.enterScope(scopes.get(i).name);
+        open = scopes;
+    }
+
+    // The symbol the table shows for name id: the one its last call left visible, or the
+    // one that shadows once its scope has closed.
+    private Symbol visible(int id) {
+        GapList<SymbolLog.Action> list = calls(id);
+        if (list.isEmpty()) return null;
+        Scope end = open.isEmpty() ? global : open.get(0);
+        Decl d = list.get(list.size() - 1).target;
+        while (d != null && !d.home.encloses(end)) d = d.shadowed;
+        return d == null ? null : show(d);
+    }
+
+    // d's symbol, brought up to date.
+    private static Symbol show(Decl d) {
+        Symbol symbol = d.symbol;
+        symbol.type = d.type;
+        symbol.value = d.last.value;
+        symbol.scope = d.scope;
+        symbol.depth = d.home.depth;
+        symbol.shadowed = d.shadowed == null ? null : d.shadowed.symbol;
+        return symbol;
+    }
+
+    // Resolve call a against the calls to its name before it. Returns whether it resolved
+    // as before, to the same symbol with the same ones behind it.
+    private boolean resolve(SymbolLog.Action a) {
+        Decl was = a.target;
+        boolean wasDeclaring = a.declares;
+        SymbolLog.Action previous = calls(a.id).before(a);
+        Decl top = previous == null ? null : previous.target;
+        while (top != null && !top.home.encloses(a.in)) top = top.shadowed;
+        boolean declares = top == null || a.kind == SymbolLog.ADD && top.home.depth != a.in.depth;
+
+        Decl target;
+        if (declares && wasDeclaring) {
+            target = was;
+            change(target);
+            target.shadowed = top;
+            move(target, a.in);
+        } else if (declares) {
+            target = new Decl(a, top, pool.name(a.id));
+            fresh.add(target);
+            changed.add(target);
+            declared.add(target);
+            a.in.symbols.add(target);
+        } else {
+            target = top;
+            if (wasDeclaring) doom(was);
+        }
+        a.target = target;
+        a.declares = declares;
+        resolved.add(a);
+        if (target != was) {
+            if (was != null && !doomed.contains(was) && was.last == a) was.last = previous(a, was);
+            if (target.last == null || compare(a, target.last) > 0) target.last = a;
+            if (was != null && fresh.contains(target) && doomed.contains(was)) {
+                merge(target, was);
+                target = was;
+            }
+        }
+        return target == was && declares == wasDeclaring && unchanged(target);
+    }
+
+    // Whether the symbols from d down the ones it shadows are all as they were.
+    private boolean unchanged(Decl d) {
+        for (; d != null; d = d.shadowed) {
+            if (fresh.contains(d) || doomed.contains(d)) return false;
+            Decl old = before.get(d);
+            if (old != null && (old.shadowed != d.shadowed || old.home != d.home)) return false;
+        }
+        return true;
+    }
+
+    // f was declared in place of d, which lost its declaration: d takes over from f, as the
+    // calls not resolved again still point at d.
+    private void merge(Decl f, Decl d) {
+        change(d);
+        declared.remove(f);
+        fresh.remove(f);
+        doomed.remove(d);
+        f.home.symbols.remove(f);
+        d.type = f.type;
+        d.scope = f.scope;
+        d.shadowed = f.shadowed;
+        move(d, f.home);
+        d.creator = f.creator;
+        // Any later call still pointing at d comes after f's calls.
+        boolean kept = d.last != null && !d.last.statement.removed() && d.last.target == d;
+        if (!kept) d.last = f.last;
+        for (SymbolLog.Action c : resolved) {
+            if (c.target == f) c.target = d;
+        }
+        for (Decl e : changed) {
+            if (e.shadowed == f) e.shadowed = d;
+        }
+        declared.add(d);
+    }
+
+    private void doom(Decl d) {
+        doomed.add(d);
+        declared.remove(d);
+    }
+
+    private void change(Decl d) {
+        if (before.putIfAbsent(d, new Decl(d)) == null) changed.add(d);
+    }
+
+    private static void move(Decl d, Scope home) {
+        if (d.home == home) return;
+        d.home.symbols.remove(d);
+        d.home = home;
+        home.symbols.add(d);
+    }
+
+    // Line up the scopes open after the removed statements with those open after the added
+    // ones, level by level: the checkpoint they resynchronized on has the same names.
+    private void reconcile(Scope oldScope, Scope newScope, int next) {
+        List<Scope> olds = outward(oldScope);
+        List<Scope> news = outward(newScope);
+        if (olds.size() != news.size()) throw new IllegalStateException("scopes out of step");
+        for (int level = olds.size() - 1; level >= 0; level--) {
+            Scope o = olds.get(level);
+            Scope n = news.get(level);
+            if (o == n) continue;
+            if (opened.contains(n) && o.opener.statement.removed()) {
+                adopt(n, o);
+            } else {
+                relocate(o, n, next);
+            }
+        }
+    }
+
+    // n was opened by the added statements in place of o, opened by the removed ones:
+    // o takes over from n, as the later statements still point at o.
+    private void adopt(Scope n, Scope o) {
+        o.parent = n.parent;
+        o.opener = n.opener;
+        n.opener.opened = o;
+        for (StatementList.Statement s : added) {
+            if (s.scope == n) s.scope = o;
+            for (SymbolLog.Action a : s.actions) {
+                if (a.in == n) a.in = o;
+                if (a.opened != null && a.opened.parent == n) a.opened.parent = o;
+            }
+        }
+        for (Decl d : new ArrayList<>(n.symbols)) move(d, o);
+    }
+
+    // The statements from index next, up to where the scope closes, were in o but are now
+    // in n, which is a different scope: the names declared in either may resolve
+    // differently there.
+    private void relocate(Scope o, Scope n, int next) {
+        for (Decl d : o.symbols) names.set(d.id);
+        for (Decl d : n.symbols) names.set(d.id);
+        for (int i = next, size = statements.size(); i < size; i++) {
+            StatementList.Statement s = statements.get(i);
+            boolean closed = false;
+            for (SymbolLog.Action a : s.actions) {
+                if (a.in == o) {
+                    a.in = n;
+                    closed |= a.kind == SymbolLog.EXIT;
+                }
+                if (a.opened != null && a.opened.parent == o) a.opened.parent = n;
+                if (a.declares && a.target.home == o) {
+                    change(a.target);
+                    move(a.target, n);
+                }
+            }
+            if (s.scope == o) s.scope = n;
+            if (closed) break;
+        }
+    }
+
+    // The scopes from s out to Global, which is left out.
+    private static List<Scope> outward(Scope s) {
+        List<Scope> scopes = new ArrayList<>();
+        for (; s.parent != null; s = s.parent) scopes.add(s);
+        return scopes;
+    }
+
+    // The last call before a that declared or updated d.
+    private SymbolLog.Action previous(SymbolLog.Action a, Decl d) {
+        GapList<SymbolLog.Action> list = calls(a.id);
+        for (int i = list.rank(a) - 1; i >= 0; i--) {
+            if (list.get(i).target == d) return list.get(i);
+        }
+        return null;
+    }
+
+    private GapList<SymbolLog.Action> calls(int id) {
+        while (calls.size() <= id) calls.add(null);
+        GapList<SymbolLog.Action> list = calls.get(id);
+        if (list == null) {
+            list = new GapList<>(this::compare);
+            calls.set(id, list);
+        }
+        return list;
+    }
+
+    private int compare(SymbolLog.Action a, SymbolLog.Action b) {
+        int c = statements.compare(a.statement, b.statement);
+        return c != 0 ? c : Integer.compare(a.ordinal, b.ordinal);
+    }
+}
@@ -0,0 +1,102 @@
+package lexer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// A SymbolTable that records the calls FinalSTable makes instead of carrying them out.
+// IncrementalCompiler keeps the calls made for each statement, and SymbolIndex works out
+// the symbols from them. Only the scope names are tracked here, as FinalSTable reads them
+// back while it works.
+class SymbolLog extends SymbolTable {
+    static final int ADD = 0;
+    static final int ASSIGN = 1;
+    static final int ENTER = 2;
+    static final int EXIT = 3;
+
+    // One recorded call, and what SymbolIndex resolved it to.
+    static final class Action {
+        final int kind;
+        final int id;
+        final String type;
+        final String value;
+        final String scope;
+        StatementList.Statement statement;
+        int ordinal;                // position in the statement's calls
+        SymbolIndex.Scope in;       // innermost scope open when it was made
+        SymbolIndex.Scope opened;   // ENTER: the scope it opened
+        SymbolIndex.Decl target;    // ADD and ASSIGN: the symbol declared or updated
+        boolean declares;           // target was declared by this call
+
+        Action(int kind, int id, String type, String value, String scope) {
+            this.kind = kind;
+            this.id = id;
+            this.type = type;
+            this.value = value;
+            this.scope = scope;
+        }
+    }
+
+    private List<Action> actions = new ArrayList<>();
+    private final ArrayDeque<String> outer = new ArrayDeque<>();
+    private String current = "Global";
+
+    @Override
+    public void addSymbol(int id, String type, String value, String scope) {
+        actions.add(new Action(ADD, id, type, value, scope));
+    }
+
+    @Override
+    public void assign(int id, String value, String scope) {
+        actions.add(new Action(ASSIGN, id, null, value, scope));
+    }
+
+    @Override
+    public void enterScope(String name) {
+        actions.add(new Action(ENTER, -1, null, null, name));
+        outer.push(current);
+        current = name;
+    }
+
+    @Override
+    public void exitScope() {
+        if (outer.isEmpty()) return;
+        actions.add(new Action(EXIT, -1, null, null, null));
+        current = outer.pop();
+    }
+
+    @Override
+    public String currentScope() {
+        return current;
+    }
+
+    @Override
+    public int depth() {
+        return outer.size();
+    }
+
+    // The calls recorded since the last take().
+    List<Action> take() {
+        if (actions.isEmpty()) return List.of();
+        List<Action> taken = actions;
+        actions = new ArrayList<>();
+        return taken;
+    }
+
+    // The open scope names, innermost first.
+    List<String> scopes() {
+        List<String> scopes = new ArrayList<>(outer.size() + 1);
+        scopes.add(current);
+        scopes.addAll(outer);
+        return scopes;
+    }
+
+    void restoreScopes(List<String> scopes) {
+        Iterator<String> it = scopes.iterator();
+        current = it.next();
+        outer.clear();
+        while (it.hasNext()) outer.addLast(it.next());
+        actions.clear();
+    }
+}
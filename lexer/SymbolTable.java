@@ -1,55 +1,151 @@
 package lexer;
+import metrics.Metrics;
+
 import java.util.*;
 
 
-class SymbolTable {
-    private List<Symbol> symbols = new ArrayList<>();
+// Scoped symbol table.
+// Names are interned in a NamePool, and an array indexed by name id holds each name's
+// innermost visible symbol; each symbol links to the one it shadows. Declarations made
+// inside a scope are recorded in an undo log, so leaving the scope just unlinks them
+// again: entering and leaving a scope costs O(1) per symbol declared in it, and lookups
+// stay O(1) however large the table grows.
+public class SymbolTable {
+    private final NamePool pool;
+    private Symbol[] index = new Symbol[64];                    // innermost symbol by name id
+    private final List<Symbol> symbols;                        // every symbol, for display
+    private final List<Symbol> undoLog = new ArrayList<>();    // declarations in open scopes
+    private final ArrayDeque<Integer> scopeMarks = new ArrayDeque<>();
+    private final ArrayDeque<String> scopeNames = new ArrayDeque<>();
+    private String currentScope = "Global";
+
+    public SymbolTable() {
+        this(new NamePool());
+    }
+
+    public SymbolTable(NamePool pool) {
+        this(pool, new ArrayList<>());
+    }
+
+    // A table whose symbols are worked out elsewhere: IncrementalCompiler's SymbolIndex
+    // keeps the list, the visible symbols (see show) and the open scopes up to date.
+    SymbolTable(NamePool pool, List<Symbol> symbols) {
+        this.pool = pool;
+        this.symbols = symbols;
+    }
+
+    public NamePool pool() {
+        return pool;
+    }
+
+    // Open a nested scope; symbols declared until the matching exitScope live in it.
+    public void enterScope(String name) {
+        scopeMarks.push(undoLog.size());
+        scopeNames.push(currentScope);
+        currentScope = name;
+    }
+
+    // Close the innermost scope, making any symbols it shadowed visible again.
+    public void exitScope() {
+        if (scopeMarks.isEmpty()) return;
+        int mark = scopeMarks.pop();
+        for (int i = undoLog.size() - 1; i >= mark; i--) {
+            Symbol sym = undoLog.remove(i);
+            index[sym.id] = sym.shadowed;
+        }
+        currentScope = scopeNames.pop();
+    }
+
+    // Make symbol, or nothing if null, the visible one for name id.
+    void show(int id, Symbol symbol) {
+        if (id >= index.length) {
+            index = Arrays.copyOf(index, Math.max(index.length * 2, id + 1));
+        }
+        index[id] = symbol;
+    }
 
+    public String currentScope() {
+        return currentScope;
+    }
+
+    public int depth() {
+        return scopeMarks.size();
+    }
+
+    // Number of symbols declared, shadowed ones included.
+    public int size() {
+        return symbols.size();
+    }
+
+    // Declare a symbol in the current scope, or update its value if the current
+    // scope already declares it.
     public void addSymbol(String name, String type, String value, String scope) {
-        for (Symbol sym : symbols) {
-        	if(sym.name.equals(name)) {
-        		sym.value=value;
-        		return;
-        	}
+        addSymbol(pool.intern(name), type, value, scope);
+    }
+
+    public void addSymbol(int id, String type, String value, String scope) {
+        Symbol existing = get(id);
+        if (existing != null && existing.depth == depth()) {
+            existing.value = value;
+            return;
+        }
+        Symbol sym = new Symbol(pool.name(id), type, value, scope);
+        sym.id = id;
+        sym.depth = depth();
+        sym.shadowed = existing;
+        show(id, sym);
+        symbols.add(sym);
+        if (!scopeMarks.isEmpty()) {
+            undoLog.add(sym);
         }
-    	symbols.add(new Symbol(name, type, value, scope));
     }
     public String getValue(String name) {
-        for (Symbol symbol : symbols) {
-            if (symbol.name.equals(name)) {
-                return symbol.value;
-            }
-        }
-        return "undefined"; 
+        Symbol symbol = get(name);
+        return symbol != null ? symbol.value : "undefined"; 
     }
     public void updateValue(String name, String value) {
-        for (Symbol symbol : symbols) {
-            if (symbol.name.equals(name)) {
-                symbol.value = value;
-                return;
-            }
+        updateValue(pool.intern(name), value);
+    }
+    public void updateValue(int id, String value) {
+        Symbol symbol = get(id);
+        if (symbol != null) {
+            symbol.value = value;
         }
     }
 
 
-    public boolean hasSymbol(String name) {
-        for (Symbol symbol : symbols) {
-            if (symbol.name.equals(name)) {
-                return true;
-            }
+    // Give the visible symbol a new value, or declare it with type Unknown if there is none.
+    public void assign(int id, String value, String scope) {
+        if (hasSymbol(id)) {
+            updateValue(id, value);
+        } else {
+            addSymbol(id, "Unknown", value, scope);
         }
-        return false;
+    }
+
+    public boolean hasSymbol(String name) {
+        return get(name) != null;
+    }
+
+    public boolean hasSymbol(int id) {
+        return get(id) != null;
     }
 
 
 
     public String getType(String name) {
-        for (Symbol symbol : symbols) {
-            if (symbol.name.equals(name)) {
-                return symbol.type;
-            }
-        }
-        return "Unknown";
+        Symbol symbol = get(name);
+        return symbol != null ? symbol.type : "Unknown";
+    }
+
+    private Symbol get(String name) {
+        int id = pool.lookup(name, 0, name.length());
+        return id < 0 ? null : get(id);
+    }
+
+    private Symbol get(int id) {
+        Metrics.probe();
+        return id < index.length ? index[id] : null;
     }
 
     public void display() {
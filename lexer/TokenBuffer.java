@@ -0,0 +1,138 @@
+package lexer;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+// Compact struct-of-arrays token list.
+// Each token is three ints (type id, start offset, length) in parallel arrays, about
+// 12 bytes per token instead of a String object per lexeme. Lexeme text is handed out
+// as a zero-copy CharSequence view of the source and only copied if a caller asks for
+// a String. Line numbers are derived on demand from a line index built on first use.
+// With a NamePool, identifiers are interned as they are added and carry a symbol id.
+public class TokenBuffer implements DFAScanner.TokenSink, TokenList {
+    private final CharSequence source;
+    private final NamePool pool;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] symbols;      // interned id of each identifier, -1 otherwise (only with a pool)
+    private int size;
+    private int[] lineStarts;   // built lazily by line()
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 64);
+    }
+
+    public TokenBuffer(CharSequence source, int capacity) {
+        this(source, capacity, null);
+    }
+
+    public TokenBuffer(CharSequence source, int capacity, NamePool pool) {
+        this.source = source;
+        this.pool = pool;
+        this.types = new int[Math.max(capacity, 1)];
+        this.starts = new int[types.length];
+        this.lengths = new int[types.length];
+        this.symbols = pool == null ? null : new int[types.length];
+    }
+
+    @Override
+    public void token(int type, int start, int end) {
+        add(type, start, end - start);
+    }
+
+    public void add(int type, int start, int length) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            if (symbols != null) symbols = Arrays.copyOf(symbols, capacity);
+        }
+        types[size] = type;
+        starts[size] = start;
+        lengths[size] = length;
+        if (symbols != null) {
+            symbols[size] = type == TokenType.IDENTIFIER.ordinal()
+                    ? pool.intern(source, start, start + length) : -1;
+        }
+        size++;
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    // The pool identifiers are interned into, or null.
+    public NamePool pool() {
+        return pool;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int type(int i) {
+        return types[i];
+    }
+
+    public int start(int i) {
+        return starts[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public int end(int i) {
+        return starts[i] + lengths[i];
+    }
+
+    // Interned id of an identifier token, or -1 (always -1 without a pool).
+    public int symbol(int i) {
+        return symbols == null ? -1 : symbols[i];
+    }
+
+    // Zero-copy view of the token's text.
+    public CharSequence text(int i) {
+        return CharBuffer.wrap(source, starts[i], starts[i] + lengths[i]);
+    }
+
+    // The token's text as a String (copies).
+    public String lexeme(int i) {
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    // Compare the token's text with a string without copying it.
+    public boolean textEquals(int i, String s) {
+        int len = lengths[i];
+        if (len != s.length()) return false;
+        int start = starts[i];
+        for (int k = 0; k < len; k++) {
+            if (source.charAt(start + k) != s.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // First character of the token.
+    public char firstChar(int i) {
+        return source.charAt(starts[i]);
+    }
+
+    // 1-based line number of the token.
+    public int line(int i) {
+        if (lineStarts == null) {
+            int[] lines = new int[64];
+            int count = 1;
+            for (int k = 0, len = source.length(); k < len; k++) {
+                if (source.charAt(k) == '\n') {
+                    if (count == lines.length) lines = Arrays.copyOf(lines, count * 2);
+                    lines[count++] = k + 1;
+                }
+            }
+            lineStarts = Arrays.copyOf(lines, count);
+        }
+        int k = Arrays.binarySearch(lineStarts, starts[i]);
+        return k >= 0 ? k + 1 : -k - 1;
+    }
+}
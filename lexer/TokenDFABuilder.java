@@ -1,46 +1,121 @@
 package lexer;
 
+import dfa.CompiledDFA;
 import dfa.DFA;
-import dfa.DFAState;
+import dfa.DFAMinimizer;
+import dfa.LazyDFA;
 import errorHandler.ErrorHandler;
+import metrics.Metrics;
+import metrics.PhaseEvent;
 import nfa.NFA;
 import java.util.*;
 
 public class TokenDFABuilder {
     public static void main(String[] args) {
-        // Map to hold DFAs for each token type.
-        Map<String, DFA> tokenDFAs = new HashMap<>();
         FinalSTable compiler = new FinalSTable();
         ErrorHandler errorHandler = new ErrorHandler();
 
+        CompiledDFA classifier;
+        if (ScannerTables.enabled()) {
+            // Load the finished classifier instead of building (and dumping) every DFA.
+            classifier = ScannerTables.classifierDFA();
+            System.out.println("Combined classifier DFA: " + classifier.stateCount() + " states (from "
+                    + System.getProperty(ScannerTables.PROPERTY) + ")");
+        } else {
+            classifier = buildAndDump();
+        }
+        System.out.println();
+        
+        String code = "xAz = 10; y = 3.141596; z = x + y; if (true) { z = z * 2; } /* comment */";
+
+        // Use your existing Lexer to get tokens from the code, checking them as they are scanned.
+        TokenBuffer tokens = Lexer.tokenizeToBuffer(code, compiler.pool(), errorHandler);
+        int comment = TokenType.COMMENT.ordinal();
+        StringJoiner lexemes = new StringJoiner(", ", "[", "]");
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) != comment) lexemes.add(tokens.text(i));
+        }
+        System.out.println("Input Code: " + code);
+        System.out.println("Tokens (from Lexer): " + lexemes);
         
+        // Classify each token with one pass over the combined DFA.
+        PhaseEvent classify = Metrics.begin(Metrics.Phase.CLASSIFY);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.type(i) == comment) continue;
+            String type = classifyToken(tokens.text(i), classifier);
+            System.out.println("Token: \"" + tokens.text(i) + "\" classified as: " + type);
+        }
+        Metrics.end(classify, tokens.size());
+        errorHandler.displayErrors();
+        
+        compiler.processTokens(tokens);
+        compiler.displaySymbolTable();
+
+        if (Metrics.ENABLED) {
+            System.err.print(Metrics.report());
+        }
+    }
+    
+    // Build the DFA of every token type, printing each one, then the combined classifier.
+    private static CompiledDFA buildAndDump() {
+        // Map to hold DFAs for each token type.
+        Map<String, DFA> tokenDFAs = new HashMap<>();
+        Map<TokenType, NFA> tokenNFAs = buildTokenNFAs();
+        for (Map.Entry<TokenType, NFA> entry : tokenNFAs.entrySet()) {
+            tokenDFAs.put(entry.getKey().name(), NFABuilder.convertToDFA(entry.getValue()));
+        }
+
+        // Print a summary of DFAs
+        for (Map.Entry<String, DFA> entry : tokenDFAs.entrySet()) {
+            System.out.println("DFA for " + entry.getKey() + ":");
+            NFABuilder.printDFATransitionTable(entry.getValue());
+            System.out.println();
+        }
+
+        // Build one combined DFA that classifies every token type in a single pass.
+        CompiledDFA classifier = buildClassifier(tokenNFAs);
+        System.out.println("Combined classifier DFA: " + classifier.stateCount() + " states");
+
+        // Report how far minimization shrinks each per-type DFA.
+        System.out.println("Minimization (states before -> after):");
+        for (Map.Entry<String, DFA> entry : tokenDFAs.entrySet()) {
+            CompiledDFA compiled = CompiledDFA.compile(entry.getValue());
+            CompiledDFA minimized = DFAMinimizer.minimize(compiled);
+            System.out.printf("%-12s %4d -> %d%n", entry.getKey(), compiled.stateCount(), minimized.stateCount());
+        }
+        return classifier;
+    }
+
+    // Build the NFA for every token type, in priority order.
+    public static Map<TokenType, NFA> buildTokenNFAs() {
+        Map<TokenType, NFA> tokenNFAs = new EnumMap<>(TokenType.class);
+
         // INTEGER: one or more digits (0-9)
         NFA digitNFA = NFABuilder.createCharRange('0', '9');
         NFA integerNFA = NFABuilder.plus(digitNFA);
-        DFA integerDFA = NFABuilder.convertToDFA(integerNFA);
-        tokenDFAs.put("INTEGER", integerDFA);
+        tokenNFAs.put(TokenType.INTEGER, integerNFA);
 
         // DECIMAL: integer part, dot, fractional part (up to 5 digits)
         NFA integerPart = NFABuilder.plus(NFABuilder.createCharRange('0', '9'));
         NFA dot = NFABuilder.createBasicNFA('.');
-        NFA fractionalPart = NFABuilder.plus(NFABuilder.createCharRange('0', '9'));
+        NFA fractionalPart = NFABuilder.repeat(NFABuilder.createCharRange('0', '9'), 1, 5);
         NFA decimalNFA = NFABuilder.concatenate(integerPart,
                             NFABuilder.concatenate(dot, fractionalPart));
-        DFA decimalDFA = NFABuilder.convertToDFA(decimalNFA);
-        tokenDFAs.put("DECIMAL", decimalDFA);
+        tokenNFAs.put(TokenType.DECIMAL, decimalNFA);
 
         // IDENTIFIER: one or more lowercase letters (no digits)
         NFA letterNFA = NFABuilder.createCharRange('a', 'z');
         NFA identifierNFA = NFABuilder.plus(letterNFA);
-        DFA identifierDFA = NFABuilder.convertToDFA(identifierNFA);
-        tokenDFAs.put("IDENTIFIER", identifierDFA);
+        tokenNFAs.put(TokenType.IDENTIFIER, identifierNFA);
+
+        // UPPERCASE_IDENTIFIER: letters, at least one of them uppercase
+        tokenNFAs.put(TokenType.UPPERCASE_IDENTIFIER, uppercaseName());
 
         // BOOLEAN: "true" or "false"
         NFA trueNFA = NFABuilder.buildStringNFA("true");
         NFA falseNFA = NFABuilder.buildStringNFA("false");
         NFA booleanNFA = NFABuilder.union(trueNFA, falseNFA);
-        DFA booleanDFA = NFABuilder.convertToDFA(booleanNFA);
-        tokenDFAs.put("BOOLEAN", booleanDFA);
+        tokenNFAs.put(TokenType.BOOLEAN, booleanNFA);
 
         // OPERATOR: +, -, *, /, %, ^
         NFA opNFA = NFABuilder.createBasicNFA('+');
@@ -49,13 +124,11 @@ public class TokenDFABuilder {
         opNFA = NFABuilder.union(opNFA, NFABuilder.createBasicNFA('/'));
         opNFA = NFABuilder.union(opNFA, NFABuilder.createBasicNFA('%'));
         opNFA = NFABuilder.union(opNFA, NFABuilder.createBasicNFA('^'));
-        DFA operatorDFA = NFABuilder.convertToDFA(opNFA);
-        tokenDFAs.put("OPERATOR", operatorDFA);
+        tokenNFAs.put(TokenType.OPERATOR, opNFA);
 
         // ASSIGNMENT: '='
         NFA assignNFA = NFABuilder.createBasicNFA('=');
-        DFA assignDFA = NFABuilder.convertToDFA(assignNFA);
-        tokenDFAs.put("ASSIGNMENT", assignDFA);
+        tokenNFAs.put(TokenType.ASSIGNMENT, assignNFA);
 
         // DELIMITER: ; , ( ) { } [ ]
         NFA delimNFA = NFABuilder.createBasicNFA(';');
@@ -66,60 +139,121 @@ public class TokenDFABuilder {
         delimNFA = NFABuilder.union(delimNFA, NFABuilder.createBasicNFA('}'));
         delimNFA = NFABuilder.union(delimNFA, NFABuilder.createBasicNFA('['));
         delimNFA = NFABuilder.union(delimNFA, NFABuilder.createBasicNFA(']'));
-        DFA delimDFA = NFABuilder.convertToDFA(delimNFA);
-        tokenDFAs.put("DELIMITER", delimDFA);
+        tokenNFAs.put(TokenType.DELIMITER, delimNFA);
 
-        // Print a summary of DFAs
-        for (Map.Entry<String, DFA> entry : tokenDFAs.entrySet()) {
-            System.out.println("DFA for " + entry.getKey() + ":");
-            NFABuilder.printDFATransitionTable(entry.getValue());
-            System.out.println();
-        }
+        return tokenNFAs;
+    }
 
-        
-        String code = "xAz = 10; y = 3.141596; z = x + y; if (true) { z = z * 2; } /* comment */";
+    // Build the NFAs for the scanner, one per token type. These mirror Lexer.COMBINED_REGEX,
+    // so scanning with them yields the same tokens as the regex reference path.
+    public static Map<TokenType, NFA> buildScannerNFAs() {
+        Map<TokenType, NFA> scannerNFAs = new EnumMap<>(TokenType.class);
 
-        // Use your existing Lexer to get tokens from the code.
-        List<String> tokens = Lexer.tokenize(code);
-        System.out.println("Input Code: " + code);
-        System.out.println("Tokens (from Lexer): " + tokens);
-        
-        // Classify each token by running it against all DFAs.
-        for (String token : tokens) {
-            String type = classifyToken(token, tokenDFAs);
-            System.out.println("Token: \"" + token + "\" classified as: " + type);
+        // COMMENT: /* ... */ (may span lines) or // to the end of the line; the body may
+        // hold any character, not only ASCII
+        NFA body = NFABuilder.union(
+                NFABuilder.createCharRangeExcluding('\u0000', '\uFFFF', "*"),
+                NFABuilder.concatenate(NFABuilder.plus(NFABuilder.createBasicNFA('*')),
+                        NFABuilder.createCharRangeExcluding('\u0000', '\uFFFF', "*/")));
+        NFA blockComment = NFABuilder.concatenate(NFABuilder.buildStringNFA("/*"),
+                NFABuilder.concatenate(NFABuilder.star(body),
+                NFABuilder.concatenate(NFABuilder.plus(NFABuilder.createBasicNFA('*')),
+                        NFABuilder.createBasicNFA('/'))));
+        NFA lineComment = NFABuilder.concatenate(NFABuilder.buildStringNFA("//"),
+                NFABuilder.star(NFABuilder.createCharRangeExcluding('\u0000', '\uFFFF', "\n")));
+        scannerNFAs.put(TokenType.COMMENT, NFABuilder.union(blockComment, lineComment));
+
+        // BOOLEAN: "true" or "false"
+        scannerNFAs.put(TokenType.BOOLEAN, NFABuilder.union(NFABuilder.buildStringNFA("true"),
+                NFABuilder.buildStringNFA("false")));
+
+        // INTEGER: optional sign, one or more digits
+        scannerNFAs.put(TokenType.INTEGER, NFABuilder.concatenate(
+                NFABuilder.optional(NFABuilder.createCharSet("+-")),
+                NFABuilder.plus(NFABuilder.createCharRange('0', '9'))));
+
+        // DECIMAL: optional sign, optional integer part, dot, 1 to 5 fractional digits
+        NFA fraction = NFABuilder.repeat(NFABuilder.createCharRange('0', '9'), 1, 5);
+        scannerNFAs.put(TokenType.DECIMAL, NFABuilder.concatenate(
+                NFABuilder.optional(NFABuilder.createCharSet("+-")),
+                NFABuilder.concatenate(NFABuilder.star(NFABuilder.createCharRange('0', '9')),
+                NFABuilder.concatenate(NFABuilder.createBasicNFA('.'), fraction))));
+
+        // CHARACTER: a single lowercase letter in single quotes
+        scannerNFAs.put(TokenType.CHARACTER, NFABuilder.concatenate(NFABuilder.createBasicNFA('\''),
+                NFABuilder.concatenate(NFABuilder.createCharRange('a', 'z'), NFABuilder.createBasicNFA('\''))));
+
+        // OPERATOR: + - * / % ^ < > optionally followed by =
+        scannerNFAs.put(TokenType.OPERATOR, NFABuilder.concatenate(NFABuilder.createCharSet("+-*/%^<>"),
+                NFABuilder.optional(NFABuilder.createBasicNFA('='))));
+
+        // ASSIGNMENT: '='
+        scannerNFAs.put(TokenType.ASSIGNMENT, NFABuilder.createBasicNFA('='));
+
+        // DELIMITER: ; ( ) { } [ ]
+        scannerNFAs.put(TokenType.DELIMITER, NFABuilder.createCharSet(";(){}[]"));
+
+        // IDENTIFIER: one or more lowercase letters
+        scannerNFAs.put(TokenType.IDENTIFIER, NFABuilder.plus(NFABuilder.createCharRange('a', 'z')));
+
+        // UPPERCASE_IDENTIFIER: letters, at least one of them uppercase
+        scannerNFAs.put(TokenType.UPPERCASE_IDENTIFIER, uppercaseName());
+
+        return scannerNFAs;
+    }
+
+    // [a-zA-Z]*[A-Z][a-zA-Z]*
+    private static NFA uppercaseName() {
+        return NFABuilder.concatenate(NFABuilder.star(letter()),
+                NFABuilder.concatenate(NFABuilder.createCharRange('A', 'Z'), NFABuilder.star(letter())));
+    }
+
+    private static NFA letter() {
+        return NFABuilder.union(NFABuilder.createCharRange('a', 'z'), NFABuilder.createCharRange('A', 'Z'));
+    }
+
+    // Build the combined, minimized DFA that drives DFAScanner.
+    public static CompiledDFA buildScannerDFA() {
+        return buildClassifier(buildScannerNFAs());
+    }
+
+    // The scanner automaton built on demand instead of up front, caching at most
+    // maxStates DFA states.
+    public static LazyDFA buildLazyScannerDFA(int maxStates) {
+        Map<TokenType, NFA> scannerNFAs = buildScannerNFAs();
+        List<NFA> nfas = new ArrayList<>(scannerNFAs.values());
+        List<Integer> types = new ArrayList<>();
+        for (TokenType type : scannerNFAs.keySet()) {
+            types.add(type.ordinal());
         }
-        errorHandler.checkErrors(code);
-        errorHandler.displayErrors();
-        
-        compiler.processTokens(tokens);
-        compiler.displaySymbolTable();
+        return NFABuilder.lazyDFA(nfas, types, maxStates);
     }
-    
-    // Validate a token using a DFA by simulating its transitions.
-    private static boolean validateToken(DFA dfa, String token) {
-        DFAState currentState = dfa.start;
-        for (char c : token.toCharArray()) {
-            Map<Character, DFAState> transitions = dfa.transitionTable.get(currentState);
-            if (transitions == null || !transitions.containsKey(c)) {
-                return false;
-            }
-            currentState = transitions.get(c);
+
+    // Combine the token NFAs into one minimized DFA whose accepting states carry
+    // the highest-priority token type they match.
+    public static CompiledDFA buildClassifier(Map<TokenType, NFA> tokenNFAs) {
+        List<NFA> nfas = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (Map.Entry<TokenType, NFA> entry : tokenNFAs.entrySet()) {
+            nfas.add(entry.getValue());
+            types.add(entry.getKey().ordinal());
         }
-        return dfa.finalStates.contains(currentState);
+        return DFAMinimizer.minimize(CompiledDFA.compile(NFABuilder.convertToDFA(nfas, types)));
     }
     
-    // Classify a token by checking which DFA in the map accepts it.
-    private static String classifyToken(String token, Map<String, DFA> dfas) {
-        // Prioritize keywords like BOOLEAN over generic IDENTIFIER
-        List<String> priorityOrder = Arrays.asList("BOOLEAN", "INTEGER", "DECIMAL", "OPERATOR", "ASSIGNMENT", "DELIMITER", "IDENTIFIER");
-
-        for (String type : priorityOrder) {
-            if (dfas.containsKey(type) && validateToken(dfas.get(type), token)) {
-                return type;
+    // Classify a token with a single run of the combined DFA.
+    public static String classifyToken(CharSequence token, CompiledDFA classifier) {
+        int state = classifier.start();
+        for (int i = 0; i < token.length(); i++) {
+            state = classifier.step(state, token.charAt(i));
+            if (state == CompiledDFA.DEAD) {
+                Metrics.transitions(i + 1);
+                return "UNKNOWN";
             }
         }
-        return "UNKNOWN";
+        Metrics.transitions(token.length());
+        TokenType type = TokenType.fromId(classifier.acceptType(state));
+        return type == null ? "UNKNOWN" : type.name();
     }
 
 }
@@ -0,0 +1,55 @@
+package lexer;
+
+import java.nio.CharBuffer;
+
+// Random access to a scanned token sequence: TokenBuffer, or IncrementalLexer for a
+// source that is being edited.
+public interface TokenList {
+    CharSequence source();
+
+    int size();
+
+    int type(int i);
+
+    int start(int i);
+
+    int length(int i);
+
+    default int end(int i) {
+        return start(i) + length(i);
+    }
+
+    // Zero-copy view of the token's text.
+    default CharSequence text(int i) {
+        return CharBuffer.wrap(source(), start(i), end(i));
+    }
+
+    default String lexeme(int i) {
+        return source().subSequence(start(i), end(i)).toString();
+    }
+
+    default boolean textEquals(int i, String s) {
+        int len = length(i);
+        if (len != s.length()) return false;
+        CharSequence source = source();
+        int start = start(i);
+        for (int k = 0; k < len; k++) {
+            if (source.charAt(start + k) != s.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    default char firstChar(int i) {
+        return source().charAt(start(i));
+    }
+
+    // Interned id of an identifier token, or -1 if the list does not intern.
+    default int symbol(int i) {
+        return -1;
+    }
+
+    // The pool identifiers are interned into, or null.
+    default NamePool pool() {
+        return null;
+    }
+}
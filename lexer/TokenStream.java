@@ -0,0 +1,165 @@
+package lexer;
+
+import dfa.Automaton;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Pull-based token iterator over a Reader, for inputs too large to hold in one String.
+// Characters are scanned out of a fixed-size buffer that is compacted and refilled as the
+// scanner moves through the input, so heap use stays constant however big the input is.
+// A token that straddles a refill is kept whole; the buffer only grows if a single token
+// (or the scanner's lookahead past it) is longer than the whole buffer.
+public class TokenStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final Automaton dfa;
+    private char[] buf;
+    private long bufStart;  // absolute offset of buf[0]
+    private int pos;        // next unscanned index in buf
+    private int limit;      // number of valid chars in buf
+    private boolean eof;
+
+    private int type = -1;
+    private int tokenStart;
+    private int tokenEnd;
+
+    public TokenStream(Reader reader) {
+        this(reader, DFAScanner.forLexer(), DEFAULT_BUFFER_SIZE);
+    }
+
+    public TokenStream(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    public TokenStream(Reader reader, DFAScanner scanner, int bufferSize) {
+        this.reader = reader;
+        this.dfa = scanner.dfa();
+        this.buf = new char[bufferSize];
+    }
+
+    // Advance to the next token. Returns false once the input is exhausted.
+    public boolean next() {
+        while (true) {
+            if (pos == limit && !fill()) {
+                type = -1;
+                return false;
+            }
+            int state = dfa.start();
+            int lastEnd = -1;
+            int lastType = -1;
+            int i = pos;
+            while (true) {
+                if (i == limit) {
+                    long before = bufStart;
+                    boolean more = fill();
+                    int shift = (int) (bufStart - before);
+                    i -= shift;
+                    if (lastEnd >= 0) lastEnd -= shift;
+                    if (!more) break;
+                }
+                state = dfa.step(state, buf[i++]);
+                if (state == Automaton.DEAD) break;
+                int t = dfa.acceptType(state);
+                if (t >= 0) {
+                    lastEnd = i;
+                    lastType = t;
+                }
+            }
+            if (lastEnd < 0) {
+                pos++;
+                continue;
+            }
+            type = lastType;
+            tokenStart = pos;
+            tokenEnd = lastEnd;
+            pos = lastEnd;
+            return true;
+        }
+    }
+
+    // Token type id of the current token (see TokenType).
+    public int type() {
+        return type;
+    }
+
+    // Absolute character offset of the current token.
+    public long start() {
+        return bufStart + tokenStart;
+    }
+
+    // Absolute character offset just past the current token.
+    public long end() {
+        return bufStart + tokenEnd;
+    }
+
+    public int length() {
+        return tokenEnd - tokenStart;
+    }
+
+    // Materialize the text of the current token.
+    public String text() {
+        return new String(buf, tokenStart, tokenEnd - tokenStart);
+    }
+
+    // Iterate over the text of the remaining tokens, skipping comments.
+    public Iterator<String> lexemes() {
+        int comment = TokenType.COMMENT.ordinal();
+        return new Iterator<String>() {
+            private boolean ready;
+
+            @Override
+            public boolean hasNext() {
+                while (!ready) {
+                    if (!TokenStream.this.next()) return false;
+                    ready = type != comment;
+                }
+                return true;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                ready = false;
+                return text();
+            }
+        };
+    }
+
+    // Move the unscanned tail to the front of the buffer and read more input.
+    // Everything from pos onwards is kept, so a token in progress survives the refill.
+    private boolean fill() {
+        if (eof) return false;
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            bufStart += pos;
+            tokenStart -= pos;
+            tokenEnd -= pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            char[] bigger = new char[buf.length * 2];
+            System.arraycopy(buf, 0, bigger, 0, limit);
+            buf = bigger;
+        }
+        try {
+            int n = reader.read(buf, limit, buf.length - limit);
+            if (n < 0) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package lexer;
+
+// Token types recognized by the lexer, in priority order: when one lexeme matches
+// several types (e.g. "true" is both a BOOLEAN and an IDENTIFIER), the type declared
+// first wins. The ordinal is the token type id used in the compiled DFAs.
+public enum TokenType {
+    COMMENT,
+    BOOLEAN,
+    INTEGER,
+    DECIMAL,
+    CHARACTER,
+    OPERATOR,
+    ASSIGNMENT,
+    DELIMITER,
+    IDENTIFIER,
+    // A name with uppercase letters in it. The language only allows lowercase names, but
+    // such names are scanned whole so ErrorHandler can report them.
+    UPPERCASE_IDENTIFIER;
+
+    private static final TokenType[] VALUES = values();
+
+    // Look up a type by its id, or return null for -1 (no token).
+    public static TokenType fromId(int id) {
+        return id < 0 ? null : VALUES[id];
+    }
+}
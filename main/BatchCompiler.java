@@ -0,0 +1,337 @@
+package main;
+
+import errorHandler.Diagnostic;
+import errorHandler.ErrorHandler;
+import lexer.DFAScanner;
+import lexer.FinalSTable;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+// Lexes, checks and builds the symbol table of every file under one or more directories.
+// Each file is one task on a work-stealing ForkJoinPool, and all tasks share the lexer's
+// compiled scanner (loaded from the table file named by -Dlexer.tables if given). Reading
+// a file runs under ForkJoinPool.managedBlock, so the pool adds a thread while one is
+// blocked on I/O and the cores stay busy. Each file is scanned once: the scanner
+// feeds ErrorHandler's checks, and they pass every token on to FinalSTable.
+// The walk stops handing out files while `inFlight` of them are being processed, so
+// memory is bounded by the largest files in flight rather than by the size of the tree.
+// The report is written as files finish: one line per file with its size, token count,
+// diagnostic and symbol counts and read and compile times, followed by its diagnostics,
+// then the totals.
+// Usage: BatchCompiler [-j threads] [-f files in flight] [-g glob] [-o report] [-q] dir...
+// -g selects files by name (default: all), -q leaves out the diagnostics. The exit
+// status is 1 if any file had errors or could not be read.
+public class BatchCompiler {
+    private final ForkJoinPool pool;
+    private final Semaphore inFlight;
+    private final int permits;
+    private final PathMatcher matcher;
+    private final boolean quiet;
+    private final DFAScanner scanner = DFAScanner.forLexer();
+    private final Report report;
+
+    public BatchCompiler(int threads, int inFlight, String glob, boolean quiet, Writer out) {
+        this.pool = new ForkJoinPool(threads);
+        this.permits = inFlight;
+        this.inFlight = new Semaphore(inFlight);
+        this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        this.quiet = quiet;
+        this.report = new Report(out);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int inFlight = -1;
+        String glob = "*";
+        String output = null;
+        boolean quiet = false;
+        List<Path> roots = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-j":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-f":
+                    inFlight = Integer.parseInt(args[++i]);
+                    break;
+                case "-g":
+                    glob = args[++i];
+                    break;
+                case "-o":
+                    output = args[++i];
+                    break;
+                case "-q":
+                    quiet = true;
+                    break;
+                default:
+                    roots.add(Paths.get(args[i]));
+            }
+        }
+        if (roots.isEmpty()) {
+            System.err.println("Usage: BatchCompiler [-j threads] [-f files in flight] [-g glob] [-o report] [-q] dir...");
+            System.exit(2);
+        }
+        if (inFlight < 0) inFlight = 4 * threads;
+
+        Writer out = output == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8);
+        BatchCompiler compiler = new BatchCompiler(threads, inFlight, glob, quiet, out);
+        boolean clean;
+        try {
+            clean = compiler.run(roots);
+        } finally {
+            out.close();
+        }
+        System.exit(clean ? 0 : 1);
+    }
+
+    // Process every matching file under the roots and write the totals. Returns whether
+    // all files were read and none had errors.
+    public boolean run(List<Path> roots) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        report.header();
+        for (Path root : roots) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (!matcher.matches(file.getFileName()) || !Files.isRegularFile(file)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        try {
+                            inFlight.acquire();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        }
+                        pool.execute(() -> {
+                            try {
+                                Result result;
+                                try {
+                                    result = compile(file);
+                                } catch (Throwable e) {
+                                    // Even a StackOverflowError on a pathological file is
+                                    // that file's failure, not a gap in the report.
+                                    result = failed(file, e);
+                                }
+                                report.file(result);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    // A file or directory that cannot be read is reported as failed, and the
+                    // walk goes on with the rest of the tree.
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        report.file(failed(file, e));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                        if (e != null) report.file(failed(dir, e));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                report.file(failed(root, e));
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+        inFlight.acquire(permits);     // every task has finished
+        pool.shutdown();
+        return report.totals(System.nanoTime() - start, pool.getParallelism());
+    }
+
+    private static Result failed(Path file, Throwable e) {
+        Result result = new Result(file);
+        result.failure = e.toString();
+        return result;
+    }
+
+    // Lex, check and collect the symbols of one file.
+    private Result compile(Path file) {
+        Result result = new Result(file);
+        long start = System.nanoTime();
+        String text;
+        try {
+            Read read = new Read(file);
+            ForkJoinPool.managedBlock(read);
+            if (read.error != null) throw read.error;
+            text = new String(read.bytes, StandardCharsets.UTF_8);
+            result.bytes = read.bytes.length;
+        } catch (IOException | InterruptedException e) {
+            result.failure = e.toString();
+            return result;
+        }
+        long read = System.nanoTime();
+
+        ErrorHandler errors = new ErrorHandler();
+        FinalSTable table = new FinalSTable();
+        TokenCounter counter = new TokenCounter(errors.checker(text, table.sink(text)));
+        scanner.scan(text, counter);
+        table.end();
+        long done = System.nanoTime();
+
+        result.tokens = counter.tokens;
+        result.diagnostics = errors.diagnostics();
+        result.symbols = table.symbolTable().size();
+        result.readNanos = read - start;
+        result.compileNanos = done - read;
+        return result;
+    }
+
+    // Reads a whole file as a blocking step the pool can compensate for.
+    private static final class Read implements ForkJoinPool.ManagedBlocker {
+        private final Path file;
+        byte[] bytes;
+        IOException error;
+
+        Read(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                bytes = Files.readAllBytes(file);
+            } catch (IOException e) {
+                error = e;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return bytes != null || error != null;
+        }
+    }
+
+    private static final class TokenCounter implements DFAScanner.TokenSink {
+        private final DFAScanner.TokenSink next;
+        long tokens;
+
+        TokenCounter(DFAScanner.TokenSink next) {
+            this.next = next;
+        }
+
+        @Override
+        public void token(int type, int start, int end) {
+            tokens++;
+            next.token(type, start, end);
+        }
+    }
+
+    // What compiling one file produced.
+    private static final class Result {
+        final Path file;
+        long bytes;
+        long tokens;
+        List<Diagnostic> diagnostics = List.of();
+        int symbols;
+        long readNanos;
+        long compileNanos;
+        String failure;     // why the file could not be read or compiled, or null
+
+        Result(Path file) {
+            this.file = file;
+        }
+    }
+
+    // The report, written a file at a time as results come in, with running totals.
+    private final class Report {
+        private final Writer out;
+        private long files;
+        private long failed;
+        private long bytes;
+        private long tokens;
+        private long errors;
+        private long warnings;
+        private long symbols;
+        private long readNanos;
+        private long compileNanos;
+
+        Report(Writer out) {
+            this.out = out;
+        }
+
+        synchronized void header() throws IOException {
+            out.write("# file\tbytes\ttokens\terrors\twarnings\tsymbols\tread ms\tcompile ms\n");
+        }
+
+        // Write one file's results in a single block so files do not interleave.
+        synchronized void file(Result result) {
+            StringBuilder sb = new StringBuilder(128);
+            files++;
+            sb.append(result.file);
+            if (result.failure != null) {
+                failed++;
+                sb.append("\tFAILED: ").append(result.failure).append('\n');
+            } else {
+                int fileErrors = 0;
+                for (Diagnostic diagnostic : result.diagnostics) {
+                    if (diagnostic.code.severity.equals("Error")) fileErrors++;
+                }
+                int fileWarnings = result.diagnostics.size() - fileErrors;
+                bytes += result.bytes;
+                tokens += result.tokens;
+                errors += fileErrors;
+                warnings += fileWarnings;
+                symbols += result.symbols;
+                readNanos += result.readNanos;
+                compileNanos += result.compileNanos;
+                sb.append('\t').append(result.bytes).append('\t').append(result.tokens)
+                        .append('\t').append(fileErrors).append('\t').append(fileWarnings)
+                        .append('\t').append(result.symbols)
+                        .append('\t').append(millis(result.readNanos))
+                        .append('\t').append(millis(result.compileNanos)).append('\n');
+                if (!quiet) {
+                    for (Diagnostic diagnostic : result.diagnostics) {
+                        sb.append("  ").append(diagnostic.message()).append('\n');
+                    }
+                }
+            }
+            try {
+                out.write(sb.toString());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized boolean totals(long wallNanos, int threads) throws IOException {
+            double seconds = wallNanos / 1e9;
+            out.write(String.format("# %d files (%d failed), %d bytes, %d tokens, %d errors, %d warnings, %d symbols%n",
+                    files, failed, bytes, tokens, errors, warnings, symbols));
+            out.write(String.format("# wall %.1f ms on %d threads: %.1f files/s, %.1f MB/s; read %s ms, compile %s ms in total%n",
+                    wallNanos / 1e6, threads, files / seconds, bytes / seconds / (1 << 20),
+                    millis(readNanos), millis(compileNanos)));
+            out.flush();
+            return failed == 0 && errors == 0;
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1e6);
+    }
+}
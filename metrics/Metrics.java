@@ -0,0 +1,194 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Per-phase timings and pipeline counters.
+// Counting is switched on with -Dlexer.metrics=true. The flag is a static final read once
+// at class initialization, so with metrics off every counter call is folded away by the
+// JIT, and hot loops report in bulk (one add per token, not per character) so they stay
+// cheap with metrics on. Counters are LongAdders, safe to bump from parallel lexing
+// threads. Phase boundaries are also Flight Recorder events (PhaseEvent), recorded
+// whenever a JFR recording enables them, independently of the flag.
+public final class Metrics {
+    public static final String PROPERTY = "lexer.metrics";
+    public static final boolean ENABLED = Boolean.getBoolean(PROPERTY);
+
+    public enum Phase { TOKENIZE, CLASSIFY, CHECK_ERRORS, PROCESS_TOKENS }
+
+    private static final LongAdder tokens = new LongAdder();
+    private static final LongAdder transitions = new LongAdder();
+    private static final LongAdder probes = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+    private static final LongAdder[] phaseCalls = adders();
+    private static final LongAdder[] phaseNanos = adders();
+
+    static {
+        if (ENABLED) register();
+    }
+
+    private Metrics() {
+    }
+
+    // Start timing a phase; pass the result to end().
+    public static PhaseEvent begin(Phase phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.kind = phase;
+        event.begin();
+        if (ENABLED) event.started = System.nanoTime();
+        return event;
+    }
+
+    // Finish a phase that handled the given number of items.
+    public static void end(PhaseEvent event, long items) {
+        if (ENABLED) {
+            int phase = event.kind.ordinal();
+            phaseNanos[phase].add(System.nanoTime() - event.started);
+            phaseCalls[phase].increment();
+            if (event.kind == Phase.TOKENIZE) tokens.add(items);
+        }
+        if (event.shouldCommit()) {
+            event.phase = event.kind.name();
+            event.items = items;
+            event.commit();
+        }
+    }
+
+    public static void transitions(long n) {
+        if (ENABLED) transitions.add(n);
+    }
+
+    public static void probe() {
+        if (ENABLED) probes.increment();
+    }
+
+    public static void errors(long n) {
+        if (ENABLED) errors.add(n);
+    }
+
+    public static long tokens() {
+        return tokens.sum();
+    }
+
+    // Tokens produced per second of time spent in the tokenize phase.
+    public static double tokensPerSecond() {
+        long nanos = phaseNanos[Phase.TOKENIZE.ordinal()].sum();
+        return nanos == 0 ? 0 : tokens.sum() * 1e9 / nanos;
+    }
+
+    public static long transitions() {
+        return transitions.sum();
+    }
+
+    public static long probes() {
+        return probes.sum();
+    }
+
+    public static long errors() {
+        return errors.sum();
+    }
+
+    public static long calls(Phase phase) {
+        return phaseCalls[phase.ordinal()].sum();
+    }
+
+    public static long nanos(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum();
+    }
+
+    public static void reset() {
+        for (LongAdder adder : new LongAdder[] {tokens, transitions, probes, errors}) adder.reset();
+        for (Phase phase : Phase.values()) {
+            phaseCalls[phase.ordinal()].reset();
+            phaseNanos[phase.ordinal()].reset();
+        }
+    }
+
+    // One-line-per-figure summary of everything counted so far.
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            sb.append(String.format("%-15s %6d calls %10.3f ms%n",
+                    phase, calls(phase), nanos(phase) / 1e6));
+        }
+        sb.append(String.format("tokens          %d (%.0f/s)%n", tokens(), tokensPerSecond()));
+        sb.append(String.format("dfa transitions %d%n", transitions()));
+        sb.append(String.format("symbol probes   %d%n", probes()));
+        sb.append(String.format("errors          %d%n", errors()));
+        return sb.toString();
+    }
+
+    // Expose the counters as the MXBean lexer:type=Metrics. Done automatically when
+    // metrics are enabled; registering twice is harmless.
+    public static synchronized void register() {
+        try {
+            ObjectName name = new ObjectName("lexer:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), name);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("cannot register metrics bean", e);
+        }
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[Phase.values().length];
+        for (int i = 0; i < adders.length; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static class Bean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return ENABLED;
+        }
+
+        @Override
+        public long getTokens() {
+            return tokens();
+        }
+
+        @Override
+        public double getTokensPerSecond() {
+            return tokensPerSecond();
+        }
+
+        @Override
+        public long getDfaTransitions() {
+            return transitions();
+        }
+
+        @Override
+        public long getSymbolProbes() {
+            return probes();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors();
+        }
+
+        @Override
+        public Map<String, Long> getPhaseCalls() {
+            Map<String, Long> calls = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) calls.put(phase.name(), calls(phase));
+            return calls;
+        }
+
+        @Override
+        public Map<String, Long> getPhaseNanos() {
+            Map<String, Long> nanos = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) nanos.put(phase.name(), nanos(phase));
+            return nanos;
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package metrics;
+
+import java.util.Map;
+
+// JMX view of Metrics, registered as lexer:type=Metrics when metrics are enabled.
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    long getTokens();
+
+    double getTokensPerSecond();
+
+    long getDfaTransitions();
+
+    long getSymbolProbes();
+
+    long getErrors();
+
+    // Calls and total nanoseconds spent, keyed by phase name.
+    Map<String, Long> getPhaseCalls();
+
+    Map<String, Long> getPhaseNanos();
+
+    void reset();
+}
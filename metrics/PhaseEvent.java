@@ -0,0 +1,32 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Flight Recorder event covering one run of a compile phase (see Metrics.Phase).
+// Recorded only while a recording has the event enabled; otherwise begin() and commit()
+// do nothing and the JIT removes the allocation.
+@Name("lexer.Phase")
+@Label("Compiler Phase")
+@Category({"Lexer"})
+@Description("One run of a compile pipeline phase")
+@StackTrace(false)
+public class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Items")
+    @Description("Tokens, statements or symbols handled by the phase")
+    long items;
+
+    // System.nanoTime() at begin, for the in-process counters; not recorded.
+    transient long started;
+    transient Metrics.Phase kind;
+
+    // Only Metrics.begin creates these.
+    PhaseEvent() {
+    }
+}
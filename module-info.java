@@ -6,4 +6,9 @@
  */
 module CC_A1 {
 	requires java.xml;
+	requires java.compiler;
+	requires java.management;
+	requires jdk.management;
+	requires transitive jdk.jfr;
+	exports metrics;
 }
\ No newline at end of file
@@ -0,0 +1,240 @@
+package nfa;
+
+import java.util.*;
+
+// Dense, array-based snapshot of an NFA for subset construction.
+// Every arena state reachable from the start states gets an id 0..size-1, so sets of NFA
+// states can be BitSets and edges are plain int arrays. The alphabet is the set of
+// disjoint character intervals that the edge ranges split the character space into, and
+// a labelled edge refers to the run of intervals its range covers, so a wide range costs
+// no more than a single character. The epsilon closure of every state is computed once
+// up front, so the closure of a set is just an OR of cached bitsets.
+public final class DenseNFA {
+    public final int size;
+    public final int[] starts;        // ids of the start states
+    public final int[] acceptTypes;   // token type accepted by each state, -1 if none
+    public final int[][] epsilon;     // epsilon successors of each state
+    public final int[][] symbols;     // first alphabet interval of each labelled edge
+    public final int[][] symbolEnds;  // last alphabet interval of each labelled edge
+    public final int[][] targets;     // target state of each labelled edge
+    public final char[] lows;         // alphabet interval i is [lows[i], highs[i]]
+    public final char[] highs;
+    private final BitSet[] closures;  // epsilon closure of each state (shared within an SCC)
+
+    private DenseNFA(int size, int[] starts, int[] acceptTypes, int[][] epsilon, int[][] symbols,
+                     int[][] symbolEnds, int[][] targets, char[] lows, char[] highs) {
+        this.size = size;
+        this.starts = starts;
+        this.acceptTypes = acceptTypes;
+        this.epsilon = epsilon;
+        this.symbols = symbols;
+        this.symbolEnds = symbolEnds;
+        this.targets = targets;
+        this.lows = lows;
+        this.highs = highs;
+        this.closures = computeClosures();
+    }
+
+    // Number the states of the arena reachable from starts. acceptTypes gives the token
+    // type accepted by each arena state, -1 if none.
+    public static DenseNFA of(NFAArena arena, int[] starts, int[] acceptTypes) {
+        int[] index = new int[arena.stateCount()];
+        Arrays.fill(index, -1);
+        int[] states = new int[arena.stateCount()];
+        int n = 0;
+        for (int start : starts) {
+            if (index[start] < 0) {
+                index[start] = n;
+                states[n++] = start;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int e = arena.firstEdge(states[i]); e >= 0; e = arena.nextEdge(e)) {
+                int to = arena.target(e);
+                if (index[to] < 0) {
+                    index[to] = n;
+                    states[n++] = to;
+                }
+            }
+        }
+
+        // Split the character space at every range boundary and keep the pieces that
+        // some edge covers.
+        int[] points = new int[arena.edgeCount() * 2];
+        int p = 0;
+        for (int i = 0; i < n; i++) {
+            for (int e = arena.firstEdge(states[i]); e >= 0; e = arena.nextEdge(e)) {
+                if (arena.isEpsilon(e)) continue;
+                points[p++] = arena.low(e);
+                points[p++] = arena.high(e) + 1;
+            }
+        }
+        Arrays.sort(points, 0, p);
+        int distinct = 0;
+        for (int i = 0; i < p; i++) {
+            if (distinct == 0 || points[distinct - 1] != points[i]) points[distinct++] = points[i];
+        }
+        int[] cover = new int[distinct + 1];
+        for (int i = 0; i < n; i++) {
+            for (int e = arena.firstEdge(states[i]); e >= 0; e = arena.nextEdge(e)) {
+                if (arena.isEpsilon(e)) continue;
+                cover[Arrays.binarySearch(points, 0, distinct, arena.low(e))]++;
+                cover[Arrays.binarySearch(points, 0, distinct, arena.high(e) + 1)]--;
+            }
+        }
+        char[] lows = new char[Math.max(distinct - 1, 0)];
+        char[] highs = new char[lows.length];
+        int k = 0;
+        for (int i = 0, depth = 0; i + 1 < distinct; i++) {
+            depth += cover[i];
+            if (depth > 0) {
+                lows[k] = (char) points[i];
+                highs[k++] = (char) (points[i + 1] - 1);
+            }
+        }
+        lows = Arrays.copyOf(lows, k);
+        highs = Arrays.copyOf(highs, k);
+
+        int[][] epsilon = new int[n][];
+        int[][] symbols = new int[n][];
+        int[][] symbolEnds = new int[n][];
+        int[][] targets = new int[n][];
+        int[] types = new int[n];
+        for (int i = 0; i < n; i++) {
+            int s = states[i];
+            int eps = 0, labelled = 0;
+            for (int e = arena.firstEdge(s); e >= 0; e = arena.nextEdge(e)) {
+                if (arena.isEpsilon(e)) eps++; else labelled++;
+            }
+            epsilon[i] = new int[eps];
+            symbols[i] = new int[labelled];
+            symbolEnds[i] = new int[labelled];
+            targets[i] = new int[labelled];
+            eps = 0;
+            labelled = 0;
+            for (int e = arena.firstEdge(s); e >= 0; e = arena.nextEdge(e)) {
+                if (arena.isEpsilon(e)) {
+                    epsilon[i][eps++] = index[arena.target(e)];
+                } else {
+                    symbols[i][labelled] = Arrays.binarySearch(lows, (char) arena.low(e));
+                    symbolEnds[i][labelled] = interval(lows, highs, (char) arena.high(e));
+                    targets[i][labelled++] = index[arena.target(e)];
+                }
+            }
+            types[i] = acceptTypes[s];
+        }
+        int[] startIds = new int[starts.length];
+        for (int i = 0; i < starts.length; i++) startIds[i] = index[starts[i]];
+        return new DenseNFA(n, startIds, types, epsilon, symbols, symbolEnds, targets, lows, highs);
+    }
+
+    // Number of intervals in the alphabet.
+    public int alphabetSize() {
+        return lows.length;
+    }
+
+    // Index of the alphabet interval containing c, or -1 if no edge accepts c.
+    public int symbolOf(char c) {
+        return interval(lows, highs, c);
+    }
+
+    private static int interval(char[] lows, char[] highs, char c) {
+        int i = Arrays.binarySearch(lows, c);
+        if (i >= 0) return i;
+        i = -i - 2;
+        return i >= 0 && c <= highs[i] ? i : -1;
+    }
+
+    // Epsilon closure of a single state. The result is shared and must not be modified.
+    public BitSet closure(int state) {
+        return closures[state];
+    }
+
+    // Epsilon closure of a set of states, as a new BitSet.
+    public BitSet epsilonClosure(BitSet set) {
+        BitSet result = new BitSet(size);
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            result.or(closures[s]);
+        }
+        return result;
+    }
+
+    // Tarjan's SCC algorithm over the epsilon edges, run iteratively since epsilon chains
+    // can be thousands of states long. Tarjan emits each SCC after every SCC reachable from
+    // it, so in emission order a component's closure is its own members OR the closures of
+    // its successors, which are already done.
+    private BitSet[] computeClosures() {
+        BitSet[] result = new BitSet[size];
+        int[] order = new int[size];      // DFS discovery index + 1, 0 if unvisited
+        int[] low = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] sccStack = new int[size];
+        int sccTop = 0;
+        int[] callStack = new int[size];
+        int[] edgeIndex = new int[size];
+        int counter = 0;
+
+        for (int root = 0; root < size; root++) {
+            if (order[root] != 0) continue;
+            int callTop = 0;
+            callStack[callTop++] = root;
+            order[root] = low[root] = ++counter;
+            sccStack[sccTop++] = root;
+            onStack[root] = true;
+            edgeIndex[root] = 0;
+            while (callTop > 0) {
+                int v = callStack[callTop - 1];
+                if (edgeIndex[v] < epsilon[v].length) {
+                    int w = epsilon[v][edgeIndex[v]++];
+                    if (order[w] == 0) {
+                        order[w] = low[w] = ++counter;
+                        sccStack[sccTop++] = w;
+                        onStack[w] = true;
+                        edgeIndex[w] = 0;
+                        callStack[callTop++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] != order[v]) continue;
+
+                // v is the root of an SCC: pop it and build the shared closure.
+                BitSet closure = new BitSet(size);
+                int bottom = sccTop;
+                do {
+                    bottom--;
+                    closure.set(sccStack[bottom]);
+                } while (sccStack[bottom] != v);
+                for (int i = bottom; i < sccTop; i++) {
+                    int u = sccStack[i];
+                    for (int w : epsilon[u]) {
+                        if (result[w] != null) closure.or(result[w]);
+                    }
+                }
+                for (int i = bottom; i < sccTop; i++) {
+                    int u = sccStack[i];
+                    onStack[u] = false;
+                    result[u] = closure;
+                }
+                sccTop = bottom;
+            }
+        }
+        return result;
+    }
+
+    // Highest-priority (lowest) token type accepted by any state in the set, or -1.
+    public int acceptType(BitSet set) {
+        int best = -1;
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            int type = acceptTypes[s];
+            if (type >= 0 && (best < 0 || type < best)) best = type;
+        }
+        return best;
+    }
+}
@@ -1,17 +1,36 @@
 package nfa;
 
-import java.util.HashSet;
-import java.util.Set;
-
+// Handle on an NFA fragment: a start and an end state in an NFAArena.
+// Composing fragments only adds states and edges to their shared arena, so it is O(1)
+// apart from the occasional arena merge (see NFAArena.join).
 public class NFA {
-    public State start;
-    public State end;
-    public Set<State> states = new HashSet<>();
+    private NFAArena arena;
+    private int start;
+    private int end;
 
-    public NFA(State start, State end) {
+    public NFA(NFAArena arena, int start, int end) {
+        this.arena = arena;
         this.start = start;
         this.end = end;
-        states.add(start);
-        states.add(end);
+    }
+
+    // The arena holding this NFA, following any merges since the handle was made.
+    public NFAArena arena() {
+        while (arena.forward != null) {
+            start += arena.offset;
+            end += arena.offset;
+            arena = arena.forward;
+        }
+        return arena;
+    }
+
+    public int start() {
+        arena();
+        return start;
+    }
+
+    public int end() {
+        arena();
+        return end;
     }
 }
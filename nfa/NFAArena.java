@@ -0,0 +1,161 @@
+package nfa;
+
+import java.util.Arrays;
+
+// Growable primitive storage for the states and edges of one or more NFAs.
+// States are ints 0..stateCount-1. Edges live in parallel int arrays (from, low, high,
+// to), and each state's outgoing edges are chained through next[] in insertion order, so
+// adding a state or an edge never allocates an object. An edge is labelled with the
+// inclusive character range [low, high], so a class like [a-z] is a single edge; low
+// EPSILON marks an epsilon edge.
+// Two NFAs can only be wired together once they share an arena. join() moves the smaller
+// arena into the larger one and leaves a forwarding pointer behind, so handles into the
+// old arena stay valid and every state is copied at most O(log n) times overall.
+public final class NFAArena {
+    public static final int EPSILON = -1;
+
+    private int stateCount;
+    private int[] head = new int[8];   // first edge of each state, -1 if none
+    private int[] tail = new int[8];   // last edge of each state, -1 if none
+    private int edgeCount;
+    private int[] from = new int[8];
+    private int[] low = new int[8];
+    private int[] high = new int[8];
+    private int[] to = new int[8];
+    private int[] next = new int[8];   // next edge of the same state, -1 at the end
+
+    NFAArena forward;                  // arena this one was moved into, or null
+    int offset;                        // what this arena's state ids became there
+
+    public int stateCount() {
+        return stateCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public int newState() {
+        if (stateCount == head.length) {
+            head = Arrays.copyOf(head, stateCount * 2);
+            tail = Arrays.copyOf(tail, stateCount * 2);
+        }
+        head[stateCount] = -1;
+        tail[stateCount] = -1;
+        return stateCount++;
+    }
+
+    public void addEdge(int fromState, char c, int toState) {
+        addRange(fromState, c, c, toState);
+    }
+
+    public void addEpsilon(int fromState, int toState) {
+        addRange(fromState, EPSILON, EPSILON, toState);
+    }
+
+    // Add an edge on every character in [lowChar, highChar].
+    public void addRange(int fromState, int lowChar, int highChar, int toState) {
+        if (edgeCount == from.length) {
+            from = Arrays.copyOf(from, edgeCount * 2);
+            low = Arrays.copyOf(low, edgeCount * 2);
+            high = Arrays.copyOf(high, edgeCount * 2);
+            to = Arrays.copyOf(to, edgeCount * 2);
+            next = Arrays.copyOf(next, edgeCount * 2);
+        }
+        int e = edgeCount++;
+        from[e] = fromState;
+        low[e] = lowChar;
+        high[e] = highChar;
+        to[e] = toState;
+        next[e] = -1;
+        if (tail[fromState] < 0) {
+            head[fromState] = e;
+        } else {
+            next[tail[fromState]] = e;
+        }
+        tail[fromState] = e;
+    }
+
+    // First outgoing edge of a state, or -1.
+    public int firstEdge(int state) {
+        return head[state];
+    }
+
+    // Next outgoing edge of the same state, or -1.
+    public int nextEdge(int edge) {
+        return next[edge];
+    }
+
+    public int source(int edge) {
+        return from[edge];
+    }
+
+    public boolean isEpsilon(int edge) {
+        return low[edge] == EPSILON;
+    }
+
+    // First character of the edge's range (EPSILON for an epsilon edge).
+    public int low(int edge) {
+        return low[edge];
+    }
+
+    // Last character of the edge's range.
+    public int high(int edge) {
+        return high[edge];
+    }
+
+    public int target(int edge) {
+        return to[edge];
+    }
+
+    // Bring the arenas of a and b together and return the shared arena.
+    public static NFAArena join(NFA a, NFA b) {
+        NFAArena x = a.arena();
+        NFAArena y = b.arena();
+        if (x == y) return x;
+        if (x.stateCount < y.stateCount) {
+            NFAArena t = x;
+            x = y;
+            y = t;
+        }
+        x.absorb(y);
+        return x;
+    }
+
+    // Append every state and edge of other, then forward other to this arena.
+    private void absorb(NFAArena other) {
+        int stateBase = stateCount;
+        int edgeBase = edgeCount;
+        int states = stateCount + other.stateCount;
+        if (states > head.length) {
+            head = Arrays.copyOf(head, Math.max(states, head.length * 2));
+            tail = Arrays.copyOf(tail, head.length);
+        }
+        for (int s = 0; s < other.stateCount; s++) {
+            head[stateBase + s] = other.head[s] < 0 ? -1 : other.head[s] + edgeBase;
+            tail[stateBase + s] = other.tail[s] < 0 ? -1 : other.tail[s] + edgeBase;
+        }
+        int edges = edgeCount + other.edgeCount;
+        if (edges > from.length) {
+            int capacity = Math.max(edges, from.length * 2);
+            from = Arrays.copyOf(from, capacity);
+            low = Arrays.copyOf(low, capacity);
+            high = Arrays.copyOf(high, capacity);
+            to = Arrays.copyOf(to, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        for (int e = 0; e < other.edgeCount; e++) {
+            from[edgeBase + e] = other.from[e] + stateBase;
+            low[edgeBase + e] = other.low[e];
+            high[edgeBase + e] = other.high[e];
+            to[edgeBase + e] = other.to[e] + stateBase;
+            next[edgeBase + e] = other.next[e] < 0 ? -1 : other.next[e] + edgeBase;
+        }
+        stateCount = states;
+        edgeCount = edges;
+
+        other.forward = this;
+        other.offset = stateBase;
+        other.head = other.tail = other.from = other.low = other.high = other.to = other.next = null;
+    }
+}